@@ -16,7 +16,15 @@
 
 package javax.direct;
 
+import java.io.IOException;
 import java.nio.*;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.Checksum;
 
 /**
  * A container for data of a specific primitive type.
@@ -101,7 +109,8 @@ import java.nio.*;
  * undefined.  The initial limit may be zero, or it may be some other value
  * that depends upon the type of the buffer and the manner in which it is
  * constructed.  By default each element of a newly-allocated buffer is initialized
- * to zero.  A BytesFactory may choose to leave the initial state undefined.
+ * to zero.  A BytesFactory may choose to leave the initial state undefined,
+ * see {@link BytesFactory#zeroed(boolean)}.
  * <p></p>
  * <p></p>
  * <h4> Clearing, flipping, and rewinding </h4>
@@ -392,6 +401,36 @@ public interface Bytes extends ReferenceCounted {
      */
     Bytes slice(Bytes bytes);
 
+    /**
+     * Creates a Spliterator over the fixed size records in the remaining bytes of this buffer.
+     * <p></p>
+     * <p> Each record is <tt>recordSize</tt> bytes, the first starting at this
+     * buffer's position.  Any trailing bytes before the limit which are fewer
+     * than <tt>recordSize</tt> are not a record.  The Spliterator reports
+     * {@link Spliterator#ORDERED}, {@link Spliterator#SIZED},
+     * {@link Spliterator#SUBSIZED} and {@link Spliterator#NONNULL}. </p>
+     * <p></p>
+     * <p> To avoid an allocation per element, each Spliterator passes the same
+     * flyweight Bytes to every action, moved to the next record as by
+     * {@link #slice(Bytes)}.  The flyweight must not be retained after the action
+     * returns.  A Spliterator obtained from <tt>trySplit()</tt> has its own
+     * flyweight and always splits on a record boundary, so records can be
+     * processed in parallel:
+     * <p></p>
+     * <blockquote><pre>
+     * long total = StreamSupport.stream(ticks.records(TICK_SIZE), true)
+     *                           .mapToLong(tick -> tick.getLong(PRICE_OFFSET))
+     *                           .sum();</pre></blockquote>
+     * <p></p>
+     * <p> The records share this buffer's content.  The position and limit of
+     * this buffer are not changed. </p>
+     *
+     * @param recordSize The size of each record in bytes; must be positive
+     * @return A Spliterator over the records
+     * @throws IllegalArgumentException If <tt>recordSize</tt> is not positive
+     */
+    Spliterator<Bytes> records(int recordSize);
+
     /**
      * Creates a new byte buffer that shares this buffer's content.
      * <p></p>
@@ -445,6 +484,195 @@ public interface Bytes extends ReferenceCounted {
      */
     Bytes compact();
 
+    /**
+     * Reads a sequence of bytes from the channel into this buffer.
+     * <p></p>
+     * <p> An attempt is made to read up to <i>r</i> bytes from the channel,
+     * where <i>r</i> is the number of bytes remaining in this buffer, that is,
+     * <tt>remaining()</tt>, at the moment this method is invoked.  The bytes are
+     * written starting at this buffer's position, which is then incremented
+     * by the number of bytes read, exactly as
+     * {@link ReadableByteChannel#read(ByteBuffer)} does. </p>
+     * <p></p>
+     * <p> For direct and mapped buffers the channel reads straight into this
+     * buffer's memory; the bytes are not staged through a temporary
+     * <tt>ByteBuffer</tt> or array. </p>
+     *
+     * @param channel The channel to read from
+     * @return The number of bytes read, possibly zero, or <tt>-1</tt> if the
+     * channel has reached end-of-stream
+     * @throws IOException If an I/O error occurs
+     */
+    int readFrom(ReadableByteChannel channel) throws IOException;
+
+    /**
+     * Writes a sequence of bytes to the channel from this buffer.
+     * <p></p>
+     * <p> An attempt is made to write up to <i>r</i> bytes to the channel,
+     * where <i>r</i> is the number of bytes remaining in this buffer, that is,
+     * <tt>remaining()</tt>, at the moment this method is invoked.  The bytes are
+     * read starting at this buffer's position, which is then incremented
+     * by the number of bytes written, exactly as
+     * {@link WritableByteChannel#write(ByteBuffer)} does. </p>
+     * <p></p>
+     * <p> For direct and mapped buffers the channel writes straight from this
+     * buffer's memory; the bytes are not staged through a temporary
+     * <tt>ByteBuffer</tt> or array. </p>
+     *
+     * @param channel The channel to write to
+     * @return The number of bytes written, possibly zero
+     * @throws IOException If an I/O error occurs
+     */
+    int writeTo(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Transfers a region of a memory mapped buffer to the channel directly from the file which backs it.
+     * <p></p>
+     * <p> This is only supported by Bytes created with
+     * {@link BytesFactory#map(java.nio.channels.FileChannel, long, long)} or
+     * {@link BytesFactory#map(java.io.File, long)}.  It delegates to
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}
+     * on the backing channel, at the file position corresponding to
+     * <tt>offset</tt>, so that the operating system may send the data without
+     * copying it to or from user space, e.g. with <tt>sendfile</tt>. </p>
+     * <p></p>
+     * <p> As with <tt>FileChannel.transferTo</tt> fewer than <tt>count</tt> bytes
+     * may be transferred.  Bytes written to this buffer before this method is
+     * invoked are visible to the transfer.  The position and limit of this
+     * buffer are not changed. </p>
+     *
+     * @param channel The channel to transfer to
+     * @param offset  The index of the first byte in this buffer to be transferred
+     * @param count   The maximum number of bytes to be transferred
+     * @return The number of bytes transferred, possibly zero
+     * @throws IndexOutOfBoundsException     If <tt>offset</tt> or <tt>count</tt> is negative
+     *                                       or <tt>offset + count</tt> is larger than the buffer's limit
+     * @throws UnsupportedOperationException If this buffer is not memory mapped
+     * @throws IOException                   If an I/O error occurs
+     */
+    long transferTo(WritableByteChannel channel, long offset, long count) throws IOException;
+
+    /**
+     * Asynchronously reads from the file into the remaining bytes of this buffer.
+     * <p></p>
+     * <p> Bytes are read from the file starting at <tt>filePosition</tt> into
+     * this buffer starting at its position, until the buffer has no bytes
+     * remaining or the end of the file is reached.  The position of this
+     * buffer is incremented by the number of bytes read and then the future
+     * completes with this buffer.  If the read fails, the future completes
+     * exceptionally with the <tt>IOException</tt>. </p>
+     * <p></p>
+     * <p> For direct and mapped buffers the channel reads straight into this
+     * buffer's memory.  This buffer must not be accessed, or released, until the
+     * future has completed.  Many reads may be in flight at once, e.g. into
+     * slices of one large buffer, and awaited together with
+     * {@link CompletableFuture#allOf(CompletableFuture[])}. </p>
+     *
+     * @param channel      The channel to read from
+     * @param filePosition The file position at which the transfer is to begin; must be non-negative
+     * @return A future which completes with this buffer when the read is complete
+     * @throws IllegalArgumentException If <tt>filePosition</tt> is negative
+     */
+    CompletableFuture<Bytes> readAsync(AsynchronousFileChannel channel, long filePosition);
+
+    /**
+     * Asynchronously writes the remaining bytes of this buffer to the file.
+     * <p></p>
+     * <p> Bytes are written from this buffer starting at its position to the
+     * file starting at <tt>filePosition</tt>, until the buffer has no bytes
+     * remaining.  The position of this buffer is then set to its limit and the
+     * future completes with this buffer.  If the write fails, the future
+     * completes exceptionally with the <tt>IOException</tt>. </p>
+     * <p></p>
+     * <p> For direct and mapped buffers the channel writes straight from this
+     * buffer's memory.  This buffer must not be modified, or released, until
+     * the future has completed. </p>
+     *
+     * @param channel      The channel to write to
+     * @param filePosition The file position at which the transfer is to begin; must be non-negative
+     * @return A future which completes with this buffer when the write is complete
+     * @throws IllegalArgumentException If <tt>filePosition</tt> is negative
+     */
+    CompletableFuture<Bytes> writeAsync(AsynchronousFileChannel channel, long filePosition);
+
+    /**
+     * Touches every page of this buffer so that any page faults are taken now
+     * rather than on first access.
+     * <p></p>
+     * <p> For a memory mapped buffer this brings the whole mapping into memory.
+     * Pages are touched without changing the contents of this buffer.  The
+     * position and limit of this buffer are not changed. </p>
+     *
+     * @return This buffer
+     */
+    Bytes pretouch();
+
+    /**
+     * Touches every page of this buffer, as {@link #pretouch()} does, using the
+     * executor given so the calling thread does not wait for page faults.
+     * <p></p>
+     * <p> Pages are touched in order from the start of the buffer, so a reader
+     * which starts at the beginning of a freshly mapped file can begin straight
+     * away and will rarely overtake the pages faulted in ahead of it.  This
+     * buffer must not be released until the future has completed. </p>
+     *
+     * @param executor The executor to touch the pages on
+     * @return A future which completes with this buffer when every page has been touched
+     */
+    CompletableFuture<Bytes> pretouch(Executor executor);
+
+    /**
+     * Loads a region of a memory mapped buffer into physical memory.
+     * <p></p>
+     * <p> This makes a best effort to ensure that, when it returns, the region
+     * is resident in physical memory, as {@link MappedByteBuffer#load()} does for
+     * a whole buffer.  For a buffer which is not memory mapped this has no
+     * effect.  The position and limit of this buffer are not changed. </p>
+     *
+     * @param offset The index of the first byte to be loaded
+     * @param length The number of bytes to be loaded
+     * @return This buffer
+     * @throws IndexOutOfBoundsException If <tt>offset</tt> or <tt>length</tt> is negative
+     *                                   or <tt>offset + length</tt> is larger than the buffer's capacity
+     */
+    Bytes load(long offset, long length);
+
+    /**
+     * Advises the operating system how a region of a memory mapped buffer will be accessed.
+     * <p></p>
+     * <p> The region is widened to whole pages.  Advice is a hint and may be
+     * ignored; for a buffer which is not memory mapped this has no effect.  The
+     * contents, position and limit of this buffer are not changed. </p>
+     *
+     * @param advice How the region will be accessed
+     * @param offset The index of the first byte the advice applies to
+     * @param length The number of bytes the advice applies to
+     * @return This buffer
+     * @throws IndexOutOfBoundsException If <tt>offset</tt> or <tt>length</tt> is negative
+     *                                   or <tt>offset + length</tt> is larger than the buffer's capacity
+     */
+    Bytes advise(MemoryAdvice advice, long offset, long length);
+
+    /**
+     * Forces changes to a region of a memory mapped buffer to be written to the storage device.
+     * <p></p>
+     * <p> When this method returns, every change made to the region before it was
+     * invoked has been written to the file, as
+     * {@link MappedByteBuffer#force()} does for a whole buffer.  Only the pages
+     * which contain the region are written, e.g. with <tt>msync</tt>, so forcing a
+     * small region of a large mapping is cheap.  For a buffer which is not memory
+     * mapped this has no effect.  The position and limit of this buffer are not
+     * changed. </p>
+     *
+     * @param offset The index of the first byte to be forced
+     * @param length The number of bytes to be forced
+     * @return This buffer
+     * @throws IndexOutOfBoundsException If <tt>offset</tt> or <tt>length</tt> is negative
+     *                                   or <tt>offset + length</tt> is larger than the buffer's capacity
+     * @see GroupCommit
+     */
+    Bytes force(long offset, long length);
+
     /**
      * <p>Returns a string summarizing the state of this buffer.  </p>
      *
@@ -482,6 +710,61 @@ public interface Bytes extends ReferenceCounted {
      */
     public long longHashCode();
 
+    /**
+     * Returns the CRC32C checksum of the remaining bytes of this buffer.
+     * <p></p>
+     * <p> The checksum depends only upon the elements from <tt>position()</tt>
+     * up to, and including, the element at <tt>limit()</tt>&nbsp;-&nbsp;<tt>1</tt>.
+     * The position and limit of this buffer are not changed. </p>
+     *
+     * @return The CRC32C of the remaining bytes as an unsigned 32-bit value
+     * @see #crc32c(long, long)
+     */
+    long crc32c();
+
+    /**
+     * Returns the CRC32C checksum of a region of this buffer.
+     * <p></p>
+     * <p> The bytes are read in place and are never copied into a temporary
+     * array.  For direct and mapped buffers the region is presented to the
+     * checksum as a direct {@link ByteBuffer} view so that the intrinsic used by
+     * <tt>java.util.zip.CRC32C</tt> applies. </p>
+     * <p></p>
+     * <p> This method does not change the position or limit of this buffer. </p>
+     *
+     * @param offset The index of the first byte to be checksummed
+     * @param length The number of bytes to be checksummed
+     * @return The CRC32C of the region as an unsigned 32-bit value
+     * @throws IndexOutOfBoundsException If <tt>offset</tt> or <tt>length</tt> is negative
+     *                                   or <tt>offset + length</tt> is larger than the buffer's limit
+     */
+    long crc32c(long offset, long length);
+
+    /**
+     * Updates a checksum with a region of this buffer.
+     * <p></p>
+     * <p> This allows a checksum to be built incrementally, one region at a time,
+     * from one or more buffers.  As with {@link #crc32c(long, long)} the bytes are
+     * passed to the checksum in place, using a direct {@link ByteBuffer} view of
+     * the region where this buffer is direct or mapped. </p>
+     * <p></p>
+     * <blockquote><pre>
+     * Checksum crc = new CRC32C();
+     * header.updateChecksum(crc, 0, headerLength);
+     * body.updateChecksum(crc, 0, bodyLength);
+     * long value = crc.getValue();</pre></blockquote>
+     * <p></p>
+     * <p> This method does not change the position or limit of this buffer. </p>
+     *
+     * @param checksum The checksum to update
+     * @param offset   The index of the first byte to be checksummed
+     * @param length   The number of bytes to be checksummed
+     * @return This buffer
+     * @throws IndexOutOfBoundsException If <tt>offset</tt> or <tt>length</tt> is negative
+     *                                   or <tt>offset + length</tt> is larger than the buffer's limit
+     */
+    Bytes updateChecksum(Checksum checksum, long offset, long length);
+
     /**
      * Tells whether or not this buffer is equal to another object.
      * <p></p>
@@ -1027,6 +1310,12 @@ public interface Bytes extends ReferenceCounted {
      *
      * except that it first checks that there is sufficient space in this
      * buffer and it is potentially much more efficient. </p>
+     * <p></p>
+     * <p> When <i>n</i> is at least {@link BytesFactory#parallelThreshold()}
+     * the copy may be split into ranges copied concurrently by the factory's
+     * {@link BytesFactory#parallelPool() parallel pool}.  This method does not
+     * return until every range has been copied.  Smaller copies are a single
+     * bulk copy on the calling thread. </p>
      *
      * @param src The source buffer from which bytes are to be read;
      *            must not be this buffer
@@ -1092,6 +1381,64 @@ public interface Bytes extends ReferenceCounted {
      */
     Bytes put(byte[] src);
 
+    /**
+     * Finds the first occurrence of a byte in the remaining bytes of this buffer.
+     * <p></p>
+     * <p> The search starts at <tt>position()</tt> and stops at <tt>limit()</tt>.
+     * An invocation of this method has the same result as the loop
+     * <p></p>
+     * <pre>
+     *     for (long i = position(); i < limit(); i++)
+     *         if (getByte(i) == b)
+     *             return i;
+     *     return -1; </pre>
+     *
+     * except that it is potentially much more efficient; an implementation is
+     * expected to compare a word of bytes at a time (SWAR) or use vector
+     * instructions rather than reading one byte at a time. </p>
+     * <p></p>
+     * <p> The position and limit of this buffer are not changed. </p>
+     *
+     * @param b The byte to search for
+     * @return The index of the first matching byte, or <tt>-1</tt> if there is no match
+     */
+    long indexOf(byte b);
+
+    /**
+     * Finds the first occurrence of a sequence of bytes in the remaining bytes of this buffer.
+     * <p></p>
+     * <p> The pattern is the remaining bytes of <tt>pattern</tt>, from its
+     * position to its limit.  A match must lie entirely between
+     * <tt>position()</tt> and <tt>limit()</tt> of this buffer.  An empty pattern
+     * matches at <tt>position()</tt>. </p>
+     * <p></p>
+     * <p> Implementations are expected to scan for candidate matches on the first
+     * byte of the pattern, as {@link #indexOf(byte)} does, before comparing the
+     * rest of the pattern. </p>
+     * <p></p>
+     * <p> The position and limit of neither buffer are changed. </p>
+     *
+     * @param pattern The bytes to search for
+     * @return The index of the start of the first match, or <tt>-1</tt> if there is no match
+     */
+    long indexOf(Bytes pattern);
+
+    /**
+     * Finds the first byte in the remaining bytes of this buffer which is any one of the bytes given.
+     * <p></p>
+     * <p> This is intended for finding the next delimiter when there are several,
+     * e.g. <tt>indexOfAny((byte) '\r', (byte) '\n')</tt>.  As with
+     * {@link #indexOf(byte)} the search is from <tt>position()</tt> to
+     * <tt>limit()</tt> and is potentially much more efficient than testing
+     * one byte at a time. </p>
+     * <p></p>
+     * <p> The position and limit of this buffer are not changed. </p>
+     *
+     * @param bytes The bytes to search for
+     * @return The index of the first byte matching any of <tt>bytes</tt>, or <tt>-1</tt> if there is no match
+     */
+    long indexOfAny(byte... bytes);
+
     /**
      * Relative <i>getChar</i> method for reading a char value.
      * <p></p>
@@ -3086,26 +3433,35 @@ public interface Bytes extends ReferenceCounted {
 
     /**
      * Fill a region of the buffer with a value as a repeating byte
+     * <p></p>
+     * <p> Regions of at least {@link BytesFactory#parallelThreshold()} bytes may be
+     * filled by more than one thread.  Smaller regions are filled with a single bulk set. </p>
      */
-    Bytes fillByte(long offset, int count, byte value);
+    Bytes fillByte(long offset, long count, byte value);
 
     /**
      * Fill a region of the buffer with a value as a repeating char
      */
-    Bytes fillChar(long offset, int count, char value);
+    Bytes fillChar(long offset, long count, char value);
 
     /**
      * Fill a region of the buffer with a value as a repeating short
      */
-    Bytes fillShort(long offset, int count, short value);
+    Bytes fillShort(long offset, long count, short value);
 
     /**
      * Fill a region of the buffer with a value as a repeating int
+     * <p></p>
+     * <p> Regions of at least {@link BytesFactory#parallelThreshold()} bytes may be
+     * filled by more than one thread.  Smaller regions are filled on the calling thread. </p>
      */
-    Bytes fillInt(long offset, int count, int value);
+    Bytes fillInt(long offset, long count, int value);
 
     /**
      * Fill a region of the buffer with a value as a repeating long
+     * <p></p>
+     * <p> Regions of at least {@link BytesFactory#parallelThreshold()} bytes may be
+     * filled by more than one thread.  Smaller regions are filled on the calling thread. </p>
      */
     Bytes fillLong(long offset, long count, long value);
 
@@ -3270,4 +3626,229 @@ public interface Bytes extends ReferenceCounted {
      * @return the sum
      */
     double getAndAddDouble(long offset, double toAdd);
+
+    /**
+     * get an int with acquire semantics; no later read or write may be reordered before it.
+     * This is weaker and cheaper than getVolatileInt.
+     *
+     * @param offset to read
+     * @return the value
+     */
+    int getAcquireInt(long offset);
+
+    /**
+     * put an int with release semantics; no earlier read or write may be reordered after it.
+     * This has the same effect as putOrderedInt.
+     *
+     * @param offset to write
+     * @param value to write
+     * @return This buffer
+     */
+    Bytes putReleaseInt(long offset, int value);
+
+    /**
+     * get an int with opaque semantics; the read is atomic and will not be eliminated or hoisted out of a loop,
+     * but imposes no ordering on other reads or writes.
+     *
+     * @param offset to read
+     * @return the value
+     */
+    int getOpaqueInt(long offset);
+
+    /**
+     * put an int with opaque semantics; the write is atomic and will become visible to other threads,
+     * but imposes no ordering on other reads or writes.
+     *
+     * @param offset to write
+     * @param value to write
+     * @return This buffer
+     */
+    Bytes putOpaqueInt(long offset, int value);
+
+    /**
+     * get and set an int as an atomic operation
+     *
+     * @param offset to set
+     * @param value to set
+     * @return the previous value
+     */
+    int getAndSetInt(long offset, int value);
+
+    /**
+     * Compare and exchange an int as an atomic operation
+     *
+     * @param offset to swap
+     * @param expected to find
+     * @param value to set if the expected is found.
+     * @return the value found, the witness value, which is the expected value if and only if it was replaced
+     */
+    int compareAndExchangeInt(long offset, int expected, int value);
+
+    /**
+     * Weak compare and set an int as an atomic operation.  Unlike compareAndSwapInt this may fail spuriously, even
+     * when the expected is found, so it should be used in a retry loop, but may be cheaper on some platforms.
+     *
+     * @param offset to swap
+     * @param expected to find
+     * @param value to set if the expected is found.
+     * @return true, if the expected was replaced with the value
+     */
+    boolean weakCompareAndSetInt(long offset, int expected, int value);
+
+    /**
+     * get and bitwise or an int as an atomic operation e.g. to set flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to or with
+     * @return the previous value
+     */
+    int getAndBitwiseOrInt(long offset, int mask);
+
+    /**
+     * get and bitwise and an int as an atomic operation e.g. to clear flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to and with
+     * @return the previous value
+     */
+    int getAndBitwiseAndInt(long offset, int mask);
+
+    /**
+     * get and bitwise xor an int as an atomic operation e.g. to toggle flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to xor with
+     * @return the previous value
+     */
+    int getAndBitwiseXorInt(long offset, int mask);
+
+    /**
+     * get a long with acquire semantics; no later read or write may be reordered before it.
+     * This is weaker and cheaper than getVolatileLong.
+     *
+     * @param offset to read
+     * @return the value
+     */
+    long getAcquireLong(long offset);
+
+    /**
+     * put a long with release semantics; no earlier read or write may be reordered after it.
+     * This has the same effect as putOrderedLong.
+     *
+     * @param offset to write
+     * @param value to write
+     * @return This buffer
+     */
+    Bytes putReleaseLong(long offset, long value);
+
+    /**
+     * get a long with opaque semantics; the read is atomic and will not be eliminated or hoisted out of a loop,
+     * but imposes no ordering on other reads or writes.
+     *
+     * @param offset to read
+     * @return the value
+     */
+    long getOpaqueLong(long offset);
+
+    /**
+     * put a long with opaque semantics; the write is atomic and will become visible to other threads,
+     * but imposes no ordering on other reads or writes.
+     *
+     * @param offset to write
+     * @param value to write
+     * @return This buffer
+     */
+    Bytes putOpaqueLong(long offset, long value);
+
+    /**
+     * get and set a long as an atomic operation
+     *
+     * @param offset to set
+     * @param value to set
+     * @return the previous value
+     */
+    long getAndSetLong(long offset, long value);
+
+    /**
+     * Compare and exchange a long as an atomic operation
+     *
+     * @param offset to swap
+     * @param expected to find
+     * @param value to set if the expected is found.
+     * @return the value found, the witness value, which is the expected value if and only if it was replaced
+     */
+    long compareAndExchangeLong(long offset, long expected, long value);
+
+    /**
+     * Weak compare and set a long as an atomic operation.  Unlike compareAndSwapLong this may fail spuriously, even
+     * when the expected is found, so it should be used in a retry loop, but may be cheaper on some platforms.
+     *
+     * @param offset to swap
+     * @param expected to find
+     * @param value to set if the expected is found.
+     * @return true, if the expected was replaced with the value
+     */
+    boolean weakCompareAndSetLong(long offset, long expected, long value);
+
+    /**
+     * get and bitwise or a long as an atomic operation e.g. to set flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to or with
+     * @return the previous value
+     */
+    long getAndBitwiseOrLong(long offset, long mask);
+
+    /**
+     * get and bitwise and a long as an atomic operation e.g. to clear flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to and with
+     * @return the previous value
+     */
+    long getAndBitwiseAndLong(long offset, long mask);
+
+    /**
+     * get and bitwise xor a long as an atomic operation e.g. to toggle flags without a compare and swap loop
+     *
+     * @param offset to update
+     * @param mask to xor with
+     * @return the previous value
+     */
+    long getAndBitwiseXorLong(long offset, long mask);
+
+    /**
+     * Wait until a long, read with {@link #getVolatileLong(long)}, is at least the value expected
+     * e.g. for a sequence published by another thread or process to reach a point.
+     *
+     * @param offset       of the long to poll
+     * @param expected     the value to wait for the long to reach
+     * @param waitStrategy how to wait between polls
+     * @return the value read, at least expected
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    long awaitLong(long offset, long expected, WaitStrategy waitStrategy) throws InterruptedException;
+
+    /**
+     * Wait until an int, read with {@link #getVolatileInt(long)}, is different to the current value.
+     *
+     * @param offset       of the int to poll
+     * @param current      the value to wait for the int to change from
+     * @param waitStrategy how to wait between polls
+     * @return the new value
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    int awaitIntChange(long offset, int current, WaitStrategy waitStrategy) throws InterruptedException;
+
+    /**
+     * Release the reference this buffer was created with by its {@link BytesFactory}, as opposed to one
+     * taken with {@link #reserve()}.
+     * <p>With {@link ReferenceCounting#ATOMIC} this is the same as {@link #release()}.  With
+     * {@link ReferenceCounting#STRIPED} the creator's reference is not in the stripes, so the creator must
+     * release it with this method; {@link #release()} only releases references taken with reserve().</p>
+     *
+     * @throws IllegalStateException if the creator's reference has already been released
+     * @see ReferenceCounting#STRIPED
+     */
+    void releaseOwner();
 }
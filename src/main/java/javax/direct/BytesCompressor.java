@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Compresses and decompresses blocks of data directly between two Bytes, without copying either to the heap.
+ * <p>The compressed form is the LZ4 block format.  Compression finds matches using a hash table which is held
+ * off heap and reused between calls, and copies literals and matches a long at a time.</p>
+ * <p>A BytesCompressor is not safe for use by multiple concurrent threads as it reuses its hash table.
+ * The hash table is freed when the reference count reaches zero.</p>
+ */
+public interface BytesCompressor extends ReferenceCounted {
+    /**
+     * Returns the largest size the compressed form of <tt>length</tt> bytes can be.
+     * A destination with at least this many bytes remaining will never overflow.
+     *
+     * @param length of uncompressed data.
+     * @return the maximum length of the compressed data.
+     */
+    long maxCompressedLength(long length);
+
+    /**
+     * Compresses the remaining bytes of <tt>src</tt> into <tt>dst</tt>, starting at the current position of each.
+     * <p>The position of <tt>src</tt> is moved to its limit and the position of <tt>dst</tt> is incremented by the
+     * length of the compressed data.</p>
+     *
+     * @param src to compress.
+     * @param dst to write the compressed block to.
+     * @return the length of the compressed data.
+     * @throws java.nio.BufferOverflowException if there is insufficient space in <tt>dst</tt>, in which case the
+     *                                          position of both is unchanged.
+     */
+    long compress(Bytes src, Bytes dst);
+
+    /**
+     * Decompresses the remaining bytes of <tt>src</tt>, which must be exactly one compressed block, into <tt>dst</tt>
+     * starting at the current position of each.
+     * <p>The position of <tt>src</tt> is moved to its limit and the position of <tt>dst</tt> is incremented by the
+     * length of the decompressed data.</p>
+     *
+     * @param src to decompress.
+     * @param dst to write the decompressed data to.
+     * @return the length of the decompressed data.
+     * @throws java.nio.BufferOverflowException if there is insufficient space in <tt>dst</tt>
+     * @throws IllegalArgumentException         if <tt>src</tt> is not a valid compressed block.
+     */
+    long decompress(Bytes src, Bytes dst);
+}
@@ -17,9 +17,15 @@
 package javax.direct;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A ByteFactory creates a new Bytes buffer.  Some options are provided as performance hints and may be ignored in some environments.
@@ -60,6 +66,198 @@ public interface BytesFactory {
 
     boolean freeOnGC();
 
+    /**
+     * <p>When <i>freeOnGC</i> is false, this is the size in bytes at or above which the storage of a Bytes whose
+     * reference count reaches zero is freed or unmapped by a background thread rather than by the thread calling
+     * release().  Such Bytes are passed to the background thread through a lock free queue and freed in batches, so a
+     * large munmap does not stall the releasing thread.</p>
+     * <p>Deferring the free does not change when the Bytes becomes illegal to access; that is still when the reference
+     * count reaches zero.</p>
+     * <p>The default is <tt>Long.MAX_VALUE</tt> i.e. storage is always freed by the releasing thread.</p>
+     *
+     * @param deferredFreeThreshold the minimum size of Bytes to free in the background.
+     * @return this BytesFactory
+     */
+    BytesFactory deferredFreeThreshold(long deferredFreeThreshold);
+
+    long deferredFreeThreshold();
+
+    /**
+     * <p>When false, the contents of a Bytes from {@link #create(ByteOrder, long)} are undefined rather than zero.  This
+     * avoids the cost of clearing memory which will be overwritten anyway, e.g. a scratch buffer to serialize into.</p>
+     * <p>The default is true.</p>
+     *
+     * @param zeroed if true, created Bytes are initialised to zero.
+     * @return this BytesFactory
+     */
+    BytesFactory zeroed(boolean zeroed);
+
+    boolean zeroed();
+
+    /**
+     * <p>Keeps a pool of up to <tt>poolSize</tt> blocks of <tt>blockSize</tt> bytes which a background thread clears
+     * ahead of time.  A {@link #create(ByteOrder, long)} of <tt>blockSize</tt> bytes, when <i>zeroed</i> is true, takes a
+     * block from the pool if one is ready instead of clearing memory on the calling thread.  Blocks are returned to
+     * the pool, to be cleared again, when their reference count reaches zero.</p>
+     * <p>The default poolSize is 0, no pool.</p>
+     *
+     * @param blockSize the size of the blocks in the pool.
+     * @param poolSize  the maximum number of blocks to keep.
+     * @return this BytesFactory
+     */
+    BytesFactory zeroedPool(long blockSize, int poolSize);
+
+    long zeroedPoolBlockSize();
+
+    int zeroedPoolSize();
+
+    /**
+     * <p>Sets a hard limit on the bytes this factory, including any factory obtained from it with
+     * {@link #tag(String)}, can have created and mapped but not yet freed.  The limit is checked with a lock free
+     * reservation counter before memory is allocated or mapped.</p>
+     * <p>When an allocation would exceed the limit, the {@link #evictionListener(EvictionListener) eviction listener}
+     * is asked to release enough memory.  If there is still not enough, the allocation waits for other Bytes to be
+     * freed for up to the {@link #memoryLimitTimeout(long, TimeUnit) timeout} and then fails with an OutOfMemoryError.
+     * With a timeout of zero it fails immediately.</p>
+     * <p>The default is <tt>Long.MAX_VALUE</tt>, no limit.</p>
+     *
+     * @param memoryLimit the maximum bytes which can be allocated or mapped at once.
+     * @return this BytesFactory
+     */
+    BytesFactory memoryLimit(long memoryLimit);
+
+    long memoryLimit();
+
+    /**
+     * How long an allocation will wait for memory to be freed when the {@link #memoryLimit(long) memory limit} has been
+     * reached.  The default is zero i.e. fail immediately.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    of the timeout.
+     * @return this BytesFactory
+     */
+    BytesFactory memoryLimitTimeout(long timeout, TimeUnit unit);
+
+    /**
+     * @param unit to return the timeout in.
+     * @return the memory limit timeout in the given unit.
+     */
+    long memoryLimitTimeout(TimeUnit unit);
+
+    /**
+     * The listener asked to release memory when the {@link #memoryLimit(long) memory limit} has been reached.
+     *
+     * @param evictionListener to ask.
+     * @return this BytesFactory
+     */
+    BytesFactory evictionListener(EvictionListener evictionListener);
+
+    EvictionListener evictionListener();
+
+    /**
+     * <p>This <i>hints</i> how the reference count of each Bytes should be held.  {@link ReferenceCounting#STRIPED}
+     * avoids a single contended word when many threads reserve and release the same Bytes.  Code which creates a
+     * Bytes should release it with {@link Bytes#releaseOwner()} so it works with either.</p>
+     * <p>The default is {@link ReferenceCounting#ATOMIC}</p>
+     *
+     * @param referenceCounting how to hold the reference count.
+     * @return this BytesFactory
+     */
+    BytesFactory referenceCounting(ReferenceCounting referenceCounting);
+
+    ReferenceCounting referenceCounting();
+
+    /**
+     * <p>This <i>hints</i> the size of region, in bytes, at which bulk copies and fills should be split across
+     * the threads of the {@link #parallelPool() parallel pool}.  Regions smaller than this are copied or set with a single
+     * bulk operation on the calling thread.</p>
+     * <p>The default is <tt>Long.MAX_VALUE</tt> i.e. bulk operations are never split.</p>
+     *
+     * @param parallelThreshold the minimum size of region in bytes to split across threads.
+     * @return this BytesFactory
+     * @see Bytes#put(Bytes)
+     * @see Bytes#fillByte(long, long, byte)
+     */
+    BytesFactory parallelThreshold(long parallelThreshold);
+
+    long parallelThreshold();
+
+    /**
+     * The pool used to split bulk copies and fills of at least {@link #parallelThreshold()} bytes.
+     * <p>The calling thread waits for all the work to complete, so the pool should not be one which is busy with
+     * latency sensitive tasks.</p>
+     *
+     * @param parallelPool to split bulk operations across.
+     * @return this BytesFactory
+     */
+    BytesFactory parallelPool(ForkJoinPool parallelPool);
+
+    ForkJoinPool parallelPool();
+
+    /**
+     * <p>Records the stack trace of where one in every <tt>sampleRate</tt> Bytes created by this factory was created, so
+     * that a sampled Bytes which becomes unreachable with a reference count greater than zero, or which is accessed after
+     * its reference count reaches zero, can be reported to the {@link #leakListener(LeakListener) leak listener}.</p>
+     * <p>Only sampled Bytes pay for the stack trace and the reference used to detect them becoming unreachable, so a low
+     * rate such as 1 in 1000 can be left on in production.  This is most useful when <i>freeOnGC</i> is false, as a
+     * missed release() then leaks the underlying storage.</p>
+     * <p>The default is 0, no sampling.  A sampleRate of 1 tracks every Bytes.</p>
+     *
+     * @param sampleRate track one in this many Bytes, or 0 to track none.
+     * @return this BytesFactory
+     */
+    BytesFactory leakDetectionSampling(int sampleRate);
+
+    int leakDetectionSampling();
+
+    /**
+     * The listener notified of leaks found by {@link #leakDetectionSampling(int) sampling}.  By default leaks are
+     * printed to System.err with the stack trace of where the Bytes was created.
+     *
+     * @param leakListener to notify.
+     * @return this BytesFactory
+     */
+    BytesFactory leakListener(LeakListener leakListener);
+
+    LeakListener leakListener();
+
+    /**
+     * Name this factory for its {@link #metrics() metrics}.  A named factory registers its metrics with the platform
+     * MBeanServer.
+     *
+     * @param name of this factory.
+     * @return this BytesFactory
+     */
+    BytesFactory name(String name);
+
+    String name();
+
+    /**
+     * Returns a factory with the same options as this one which accounts for the Bytes it creates and maps under the
+     * given tag as well as under this factory.  This allows the memory used by each subsystem to be seen separately.
+     *
+     * @param tag to account under e.g. the name of a subsystem.
+     * @return a BytesFactory for this tag.
+     */
+    BytesFactory tag(String tag);
+
+    /**
+     * @return the tag of this factory, or null if this factory is not tagged.
+     */
+    String tag();
+
+    /**
+     * The memory accounting for this factory, or for this tag if this factory was obtained by {@link #tag(String)}.
+     *
+     * @return the metrics for this factory or tag.
+     */
+    BytesMetricsMXBean metrics();
+
+    /**
+     * @return the memory accounting for each tag of this factory, by tag.
+     */
+    Map<String, BytesMetricsMXBean> metricsByTag();
+
     /**
      * Create a Bytes instance which wraps this byte array
      *
@@ -79,14 +277,30 @@ public interface BytesFactory {
     Bytes wrap(ByteOrder byteOrder, ByteBuffer byteBuffer);
 
     /**
-     * Create a Bytes instance which wraps this byte array
+     * Create a Bytes instance of this size.  Its contents are zero unless {@link #zeroed(boolean) zeroed} is false.
      *
      * @param byteOrder to used, ByteOrder.nativeOrder() is the default order of your system.
      * @param size      of Bytes to create.
      * @return Bytes instance
+     * @throws OutOfMemoryError if the {@link #memoryLimit(long) memory limit} would be exceeded.
      */
     Bytes create(ByteOrder byteOrder, long size);
 
+    /**
+     * Create a Bytes instance of this size whose address is a multiple of <tt>alignment</tt>.  e.g. with an alignment
+     * of 64, a long at any offset which is a multiple of 8 is within one cache line, and can be updated atomically
+     * without a split lock.  Its contents are zero unless {@link #zeroed(boolean) zeroed} is false.
+     *
+     * @param byteOrder to used, ByteOrder.nativeOrder() is the default order of your system.
+     * @param size      of Bytes to create.
+     * @param alignment of the start of the Bytes, a power of two.
+     * @return Bytes instance
+     * @throws IllegalArgumentException if the alignment is not a power of two.
+     * @throws OutOfMemoryError         if the {@link #memoryLimit(long) memory limit} would be exceeded.
+     * @see PaddedLayout
+     */
+    Bytes create(ByteOrder byteOrder, long size, int alignment);
+
     /**
      * Memory Map a file channel into memory
      *
@@ -94,6 +308,7 @@ public interface BytesFactory {
      * @param offset within the file
      * @param size of mapping.
      * @return the Bytes representing this mapping.
+     * @throws OutOfMemoryError if the {@link #memoryLimit(long) memory limit} would be exceeded.
      */
     Bytes map(FileChannel fileChannel, long offset, long size);
 
@@ -103,6 +318,68 @@ public interface BytesFactory {
      * @param file to map into memory
      * @param size of mapping.
      * @return the Bytes representing this mapping.
+     * @throws OutOfMemoryError if the {@link #memoryLimit(long) memory limit} would be exceeded.
      */
     Bytes map(File file, long size);
+
+    /**
+     * Reads a sequence of bytes from the channel into a subsequence of the given Bytes with one scattering read where
+     * the channel supports it.
+     * <p>Bytes are read into each Bytes from its position up to its limit, filling each in turn, and the position of
+     * each is incremented by the bytes read into it, as {@link ScatteringByteChannel#read(ByteBuffer[], int, int)}
+     * does.  Direct and mapped Bytes are read into in place, without staging or concatenation.</p>
+     *
+     * @param channel to read from
+     * @param dsts    the Bytes to read into
+     * @param offset  of the first Bytes in <tt>dsts</tt> to read into
+     * @param length  the maximum number of Bytes to read into
+     * @return the number of bytes read, possibly zero, or -1 if the channel has reached end-of-stream
+     * @throws IOException if an I/O error occurs
+     */
+    long readFrom(ScatteringByteChannel channel, Bytes[] dsts, int offset, int length) throws IOException;
+
+    /**
+     * Reads a sequence of bytes from the channel into the given Bytes, as
+     * <tt>readFrom(channel, dsts, 0, dsts.length)</tt>
+     *
+     * @param channel to read from
+     * @param dsts    the Bytes to read into
+     * @return the number of bytes read, possibly zero, or -1 if the channel has reached end-of-stream
+     * @throws IOException if an I/O error occurs
+     */
+    long readFrom(ScatteringByteChannel channel, Bytes... dsts) throws IOException;
+
+    /**
+     * Writes a sequence of bytes to the channel from a subsequence of the given Bytes with one gathering write where
+     * the channel supports it.  e.g. a header and a slice of a payload can be sent in one system call.
+     * <p>Bytes are written from each Bytes from its position up to its limit, and the position of each is
+     * incremented by the bytes written from it, as {@link GatheringByteChannel#write(ByteBuffer[], int, int)} does.
+     * Direct and mapped Bytes are written from in place, without staging or concatenation.</p>
+     *
+     * @param channel to write to
+     * @param srcs    the Bytes to write from
+     * @param offset  of the first Bytes in <tt>srcs</tt> to write from
+     * @param length  the maximum number of Bytes to write from
+     * @return the number of bytes written, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    long writeTo(GatheringByteChannel channel, Bytes[] srcs, int offset, int length) throws IOException;
+
+    /**
+     * Writes a sequence of bytes to the channel from the given Bytes, as
+     * <tt>writeTo(channel, srcs, 0, srcs.length)</tt>
+     *
+     * @param channel to write to
+     * @param srcs    the Bytes to write from
+     * @return the number of bytes written, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    long writeTo(GatheringByteChannel channel, Bytes... srcs) throws IOException;
+
+    /**
+     * Create a compressor with its own off heap hash table.  A compressor should be reused, one per thread.
+     *
+     * @return a new BytesCompressor
+     */
+    BytesCompressor compressor();
 }
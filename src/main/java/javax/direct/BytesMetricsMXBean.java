@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Accounting of the off heap memory used by the Bytes of one BytesFactory, or of one tag of a BytesFactory.
+ * <p>The counters are updated with striped atomics, such as {@link java.util.concurrent.atomic.LongAdder}, so creating
+ * and releasing Bytes on many threads does not contend on one cache line.  As a result each value is a moment in time
+ * snapshot which may not be consistent with the others.</p>
+ * <p>This can be polled directly or through JMX.  A named factory registers its metrics with the platform MBeanServer
+ * as <tt>javax.direct:type=BytesFactory,name=<i>name</i></tt> and each tag as
+ * <tt>javax.direct:type=BytesFactory,name=<i>name</i>,tag=<i>tag</i></tt></p>
+ *
+ * @see BytesFactory#metrics()
+ */
+public interface BytesMetricsMXBean {
+    /**
+     * @return the bytes of memory allocated by create() and not yet freed.
+     */
+    long getReservedBytes();
+
+    /**
+     * @return the highest value getReservedBytes() has had.
+     */
+    long getPeakReservedBytes();
+
+    /**
+     * @return the bytes of memory mapped by map() and not yet unmapped.
+     */
+    long getMappedBytes();
+
+    /**
+     * @return the number of Bytes created, wrapped or mapped which are still live i.e. their reference count has not
+     * reached zero.
+     */
+    long getLiveCount();
+
+    /**
+     * @return the total number of Bytes created, wrapped or mapped.
+     */
+    long getAllocationCount();
+
+    /**
+     * @return the total number of Bytes whose reference count reached zero.
+     */
+    long getReleaseCount();
+
+    /**
+     * @return the average rate of allocations per second over the last few seconds.
+     */
+    double getAllocationsPerSecond();
+}
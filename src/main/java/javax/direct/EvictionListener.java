@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Called when a BytesFactory has reached its memory limit, to give the application a chance to release Bytes it can
+ * do without, such as cached data, before the allocation waits or fails.
+ *
+ * @see BytesFactory#memoryLimit(long)
+ */
+public interface EvictionListener {
+    /**
+     * Release Bytes to make room for an allocation.  This is called on the thread which is allocating.
+     *
+     * @param bytesRequired the number of bytes which must be released for the allocation to fit within the limit.
+     * @return the number of bytes released, which may be more or less than required.
+     */
+    long evict(long bytesRequired);
+}
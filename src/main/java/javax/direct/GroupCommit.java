@@ -0,0 +1,263 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Makes changes to a memory mapped Bytes durable in groups, so many writers share a few {@link Bytes#force(long, long)}
+ * calls.
+ * <p>Writers register each range they have changed with {@link #dirty(long, long)}.  A single flusher thread wakes
+ * every <i>interval</i>, or sooner once <i>threshold</i> bytes are dirty, sorts and coalesces the ranges registered
+ * since it last woke, and forces each coalesced range once.</p>
+ * <p>After each flush the durable position is written with {@link Bytes#putOrderedLong(long, long)} to a long at
+ * <i>durableOffset</i> in the Bytes, usually in its header.  This makes it visible to other threads and processes
+ * mapping the same file.  The durable position only advances over ranges which have been forced with no gap between
+ * them, so every byte below it is durable, even when ranges are registered or forced out of order.  It starts at the
+ * value already at <i>durableOffset</i>, which should be set to the start of the data, e.g. the end of the header,
+ * when the file is created.</p>
+ * <p>If a force fails, its ranges are kept and retried by the next flush, and the failure is reported by
+ * {@link #dirty(long, long)}, {@link #awaitDurable(long, long, TimeUnit)} and {@link #close()} until a flush
+ * succeeds.</p>
+ * <p>The Bytes is not released by this class.</p>
+ */
+public class GroupCommit implements Closeable {
+    // ranges closer than this are forced together as they are likely to share a page.
+    private static final long MERGE_GAP = 4096;
+
+    private final Bytes bytes;
+    private final long durableOffset;
+    private final long intervalNanos;
+    private final long threshold;
+    private final Thread flusher;
+    // only one flush at a time so the durable position never passes a range still being forced.
+    private final Object flushLock = new Object();
+    // guarded by flushLock, the start and end of ranges forced above the durable position, not yet contiguous with it.
+    private final TreeMap<Long, Long> forced = new TreeMap<>();
+
+    // guarded by this
+    private long[] ranges = new long[64];
+    private int rangeCount = 0;
+    private long dirtyBytes = 0;
+    private volatile boolean closed = false;
+    // the failure of the last flush, or null if it succeeded.
+    private volatile RuntimeException failure = null;
+
+    /**
+     * Start a group commit with its own flusher thread.
+     *
+     * @param bytes         the memory mapped Bytes to force.
+     * @param durableOffset the offset of the long the durable position is written to.
+     * @param interval      the longest time between flushes while there are dirty ranges.
+     * @param threshold     the number of dirty bytes which triggers a flush before the interval is up.
+     * @param unit          the unit of the interval.
+     */
+    public GroupCommit(Bytes bytes, long durableOffset, long interval, long threshold, TimeUnit unit) {
+        this.bytes = bytes;
+        this.durableOffset = durableOffset;
+        this.intervalNanos = unit.toNanos(interval);
+        this.threshold = threshold;
+        flusher = new Thread(this::runFlusher, "group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Register a range which has been written to and must be made durable.
+     *
+     * @param offset of the first byte changed.
+     * @param length of the range changed.
+     * @throws IllegalStateException if this has been closed, or if the last flush failed, in which case the range is
+     *                               still registered and will be forced once a flush succeeds.
+     */
+    public void dirty(long offset, long length) {
+        boolean wake;
+        RuntimeException failure;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("GroupCommit has been closed");
+            if (rangeCount * 2 == ranges.length)
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[rangeCount * 2] = offset;
+            ranges[rangeCount * 2 + 1] = offset + length;
+            rangeCount++;
+            long before = dirtyBytes;
+            dirtyBytes += length;
+            wake = before < threshold && dirtyBytes >= threshold;
+            failure = this.failure;
+        }
+        if (wake)
+            LockSupport.unpark(flusher);
+        if (failure != null)
+            throw new IllegalStateException("Flush failed", failure);
+    }
+
+    /**
+     * @return the position below which every byte has been made durable.
+     */
+    public long durablePosition() {
+        return bytes.getVolatileLong(durableOffset);
+    }
+
+    /**
+     * Wait for a position to be made durable.
+     *
+     * @param position to wait for.
+     * @param timeout  the maximum time to wait.
+     * @param unit     of the timeout.
+     * @return true if the position is durable, false if the timeout elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the last flush failed before the position was durable.
+     */
+    public synchronized boolean awaitDurable(long position, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (durablePosition() < position) {
+            if (failure != null)
+                throw new IllegalStateException("Flush failed", failure);
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Force every range registered so far and update the durable position, on the calling thread.
+     *
+     * @throws RuntimeException thrown by {@link Bytes#force(long, long)}, after keeping the ranges to be retried.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            long[] toFlush;
+            int count;
+            synchronized (this) {
+                if (rangeCount == 0)
+                    return;
+                toFlush = ranges;
+                count = rangeCount;
+                ranges = new long[toFlush.length];
+                rangeCount = 0;
+                dirtyBytes = 0;
+            }
+            try {
+                forceCoalesced(toFlush, count);
+            } catch (RuntimeException e) {
+                retain(toFlush, count, e);
+                throw e;
+            }
+            for (int i = 0; i < count; i++)
+                addForced(toFlush[i * 2], toFlush[i * 2 + 1]);
+            long durable = durablePosition();
+            // advance over the forced ranges which start at or below the durable position.
+            for (Map.Entry<Long, Long> first; (first = forced.firstEntry()) != null && first.getKey() <= durable; ) {
+                durable = Math.max(durable, first.getValue());
+                forced.pollFirstEntry();
+            }
+            synchronized (this) {
+                if (durable > durablePosition())
+                    bytes.putOrderedLong(durableOffset, durable);
+                failure = null;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void retain(long[] toFlush, int count, RuntimeException e) {
+        // put the ranges back with any registered since, so the next flush forces them again.
+        if ((rangeCount + count) * 2 > ranges.length)
+            ranges = Arrays.copyOf(ranges, Math.max(ranges.length * 2, (rangeCount + count) * 2));
+        System.arraycopy(toFlush, 0, ranges, rangeCount * 2, count * 2);
+        rangeCount += count;
+        for (int i = 0; i < count; i++)
+            dirtyBytes += toFlush[i * 2 + 1] - toFlush[i * 2];
+        failure = e;
+        notifyAll();
+    }
+
+    private void addForced(long start, long end) {
+        // merge with any forced range this overlaps or touches.
+        Map.Entry<Long, Long> before = forced.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        for (Map.Entry<Long, Long> after; (after = forced.ceilingEntry(start)) != null && after.getKey() <= end; ) {
+            end = Math.max(end, after.getValue());
+            forced.remove(after.getKey());
+        }
+        forced.put(start, end);
+    }
+
+    private void forceCoalesced(long[] ranges, int count) {
+        // sort the ranges by start so overlapping and neighbouring ranges are adjacent.
+        long[][] sorted = new long[count][];
+        for (int i = 0; i < count; i++)
+            sorted[i] = new long[]{ranges[i * 2], ranges[i * 2 + 1]};
+        Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+
+        long start = sorted[0][0], end = sorted[0][1];
+        for (int i = 1; i < count; i++) {
+            if (sorted[i][0] <= end + MERGE_GAP) {
+                end = Math.max(end, sorted[i][1]);
+            } else {
+                bytes.force(start, end - start);
+                start = sorted[i][0];
+                end = sorted[i][1];
+            }
+        }
+        bytes.force(start, end - start);
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // recorded by flush, the ranges are retried next interval.
+            }
+        }
+    }
+
+    /**
+     * Stop the flusher thread, after forcing any ranges still dirty.
+     *
+     * @throws RuntimeException thrown by {@link Bytes#force(long, long)} if the ranges still dirty could not be forced.
+     *                          They are kept, and {@link #flush()} can be called to retry.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
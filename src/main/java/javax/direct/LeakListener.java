@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Notified of misuse of the reference count of a Bytes sampled for leak detection.
+ * <p>Callbacks may be made on any thread, including a thread which processes references cleared by the GC, so they
+ * should return quickly.</p>
+ *
+ * @see BytesFactory#leakDetectionSampling(int)
+ */
+public interface LeakListener {
+    /**
+     * A sampled Bytes became unreachable while its reference count was greater than zero, i.e. a release() was missed.
+     *
+     * @param capacity       of the Bytes leaked.
+     * @param referenceCount of the Bytes when it became unreachable.
+     * @param allocatedAt    the stack trace of where the Bytes was created.
+     */
+    void leaked(long capacity, int referenceCount, Throwable allocatedAt);
+
+    /**
+     * A sampled Bytes was accessed after its reference count reached zero.
+     *
+     * @param bytes       which was accessed.
+     * @param allocatedAt the stack trace of where the Bytes was created.
+     * @param accessedAt  the stack trace of the access.
+     */
+    void accessedAfterRelease(Bytes bytes, Throwable allocatedAt, Throwable accessedAt);
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file mapped into memory as a sequence of fixed size chunks, giving a single 64-bit address space which can grow
+ * without remapping.
+ * <p>Each chunk is mapped with {@link BytesFactory#map(FileChannel, long, long)} the first time an address within it is
+ * accessed, extending the file as required.  A chunk stays mapped until the store is released, so growing the store
+ * never invalidates a chunk another thread is reading, and never maps the same region twice.</p>
+ * <p>An address is an offset in the file.  Multi-byte values must not span a chunk boundary, which is always the case
+ * for values aligned to their own size.</p>
+ * <p>The chunks are shared by all threads; the absolute get and put methods are as thread safe as the same methods on
+ * Bytes.  When the reference count reaches zero all the chunks are released.</p>
+ * <p>The chunks are found through a two level directory of pages of 1024 chunks each.  Mapping a chunk copies one page
+ * and the directory, which has one entry per 1024 chunks, rather than an array of every chunk in the store.</p>
+ */
+public class MappedStore implements ReferenceCounted {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final Bytes[][] NO_PAGES = {};
+
+    private final BytesFactory factory;
+    private final FileChannel fileChannel;
+    private final long chunkSize;
+    private final int chunkBits;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    // pages are never modified once published, a new page or directory is published instead.
+    private volatile Bytes[][] pages = NO_PAGES;
+
+    /**
+     * Create a store over a file channel opened for reading and writing.
+     *
+     * @param factory     to map each chunk with.
+     * @param fileChannel to map.
+     * @param chunkSize   size of each chunk, a power of two.
+     * @throws IllegalArgumentException if the chunkSize is not a power of two.
+     */
+    public MappedStore(BytesFactory factory, FileChannel fileChannel, long chunkSize) {
+        if (chunkSize <= 0 || Long.bitCount(chunkSize) != 1)
+            throw new IllegalArgumentException("chunkSize must be a power of two, was " + chunkSize);
+        this.factory = factory;
+        this.fileChannel = fileChannel;
+        this.chunkSize = chunkSize;
+        this.chunkBits = Long.numberOfTrailingZeros(chunkSize);
+    }
+
+    public long chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the address of the end of the highest chunk mapped so far.
+     */
+    public long capacity() {
+        Bytes[][] pages = this.pages;
+        for (int p = pages.length - 1; p >= 0; p--) {
+            Bytes[] page = pages[p];
+            if (page == null)
+                continue;
+            for (int i = PAGE_SIZE - 1; i >= 0; i--)
+                if (page[i] != null)
+                    return ((long) p << PAGE_BITS | i + 1L) << chunkBits;
+        }
+        return 0;
+    }
+
+    /**
+     * Map every chunk up to <tt>capacity</tt>, so later accesses below it never need to map a chunk.
+     *
+     * @param capacity to map up to.
+     * @return this
+     */
+    public MappedStore ensureCapacity(long capacity) {
+        for (long address = 0; address < capacity; address += chunkSize)
+            chunkFor(address);
+        return this;
+    }
+
+    /**
+     * Returns the chunk containing an address, mapping it if required.
+     * <p>The index of the address in the chunk is <tt>address &amp; (chunkSize() - 1)</tt>.
+     * The chunk is owned by this store; it remains valid until this store is released.</p>
+     *
+     * @param address to find the chunk for.
+     * @return the chunk.
+     */
+    public Bytes chunkFor(long address) {
+        checkAccess();
+        if (address < 0)
+            throw new IndexOutOfBoundsException("address: " + address);
+        long index = address >>> chunkBits;
+        if (index > Integer.MAX_VALUE)
+            throw new IndexOutOfBoundsException("address: " + address);
+        Bytes[][] pages = this.pages;
+        int p = (int) (index >>> PAGE_BITS);
+        if (p < pages.length) {
+            Bytes[] page = pages[p];
+            if (page != null) {
+                Bytes chunk = page[(int) index & (PAGE_SIZE - 1)];
+                if (chunk != null)
+                    return chunk;
+            }
+        }
+        return acquireChunk((int) index);
+    }
+
+    private synchronized Bytes acquireChunk(int index) {
+        checkAccess();
+        int p = index >>> PAGE_BITS, i = index & (PAGE_SIZE - 1);
+        Bytes[][] pages = this.pages;
+        Bytes[] page = p < pages.length ? pages[p] : null;
+        if (page != null && page[i] != null)
+            return page[i];
+        page = page == null ? new Bytes[PAGE_SIZE] : page.clone();
+        pages = p < pages.length ? pages.clone() : Arrays.copyOf(pages, Math.max(p + 1, pages.length * 2));
+        Bytes chunk = factory.map(fileChannel, (long) index << chunkBits, chunkSize);
+        page[i] = chunk;
+        pages[p] = page;
+        // publish a new directory so readers never see a partly updated page.
+        this.pages = pages;
+        return chunk;
+    }
+
+    /**
+     * Forces changes to a range of addresses to be written to the storage device, one chunk at a time.
+     *
+     * @param address of the first byte to force.
+     * @param length  of the range to force.
+     * @return this
+     * @see Bytes#force(long, long)
+     */
+    public MappedStore force(long address, long length) {
+        long end = address + length;
+        while (address < end) {
+            long offset = offset(address);
+            long toForce = Math.min(end - address, chunkSize - offset);
+            chunkFor(address).force(offset, toForce);
+            address += toForce;
+        }
+        return this;
+    }
+
+    private long offset(long address) {
+        return address & (chunkSize - 1);
+    }
+
+    private void checkAccess() {
+        if (refCount.get() <= 0)
+            throw new IllegalStateException("MappedStore has been released");
+    }
+
+    public byte getByte(long address) {
+        return chunkFor(address).getByte(offset(address));
+    }
+
+    public MappedStore putByte(long address, byte b) {
+        chunkFor(address).putByte(offset(address), b);
+        return this;
+    }
+
+    public short getShort(long address) {
+        return chunkFor(address).getShort(offset(address));
+    }
+
+    public MappedStore putShort(long address, short value) {
+        chunkFor(address).putShort(offset(address), value);
+        return this;
+    }
+
+    public int getInt(long address) {
+        return chunkFor(address).getInt(offset(address));
+    }
+
+    public int getVolatileInt(long address) {
+        return chunkFor(address).getVolatileInt(offset(address));
+    }
+
+    public MappedStore putInt(long address, int value) {
+        chunkFor(address).putInt(offset(address), value);
+        return this;
+    }
+
+    public MappedStore putOrderedInt(long address, int value) {
+        chunkFor(address).putOrderedInt(offset(address), value);
+        return this;
+    }
+
+    public boolean compareAndSwapInt(long address, int expected, int value) {
+        return chunkFor(address).compareAndSwapInt(offset(address), expected, value);
+    }
+
+    public long getLong(long address) {
+        return chunkFor(address).getLong(offset(address));
+    }
+
+    public long getVolatileLong(long address) {
+        return chunkFor(address).getVolatileLong(offset(address));
+    }
+
+    public MappedStore putLong(long address, long value) {
+        chunkFor(address).putLong(offset(address), value);
+        return this;
+    }
+
+    public MappedStore putOrderedLong(long address, long value) {
+        chunkFor(address).putOrderedLong(offset(address), value);
+        return this;
+    }
+
+    public boolean compareAndSwapLong(long address, long expected, long value) {
+        return chunkFor(address).compareAndSwapLong(offset(address), expected, value);
+    }
+
+    public long getAndAddLong(long address, long toAdd) {
+        return chunkFor(address).getAndAddLong(offset(address), toAdd);
+    }
+
+    public float getFloat(long address) {
+        return chunkFor(address).getFloat(offset(address));
+    }
+
+    public MappedStore putFloat(long address, float value) {
+        chunkFor(address).putFloat(offset(address), value);
+        return this;
+    }
+
+    public double getDouble(long address) {
+        return chunkFor(address).getDouble(offset(address));
+    }
+
+    public MappedStore putDouble(long address, double value) {
+        chunkFor(address).putDouble(offset(address), value);
+        return this;
+    }
+
+    @Override
+    public void reserve() {
+        for (; ; ) {
+            int count = refCount.get();
+            if (count <= 0)
+                throw new IllegalStateException("MappedStore has been released");
+            if (refCount.compareAndSet(count, count + 1))
+                return;
+        }
+    }
+
+    @Override
+    public void release() {
+        for (; ; ) {
+            int count = refCount.get();
+            if (count <= 0)
+                throw new IllegalStateException("MappedStore has been released");
+            if (refCount.compareAndSet(count, count - 1)) {
+                if (count == 1)
+                    releaseChunks();
+                return;
+            }
+        }
+    }
+
+    private synchronized void releaseChunks() {
+        for (Bytes[] page : pages)
+            if (page != null)
+                for (Bytes chunk : page)
+                    if (chunk != null)
+                        chunk.releaseOwner();
+        pages = NO_PAGES;
+    }
+
+    @Override
+    public int referenceCount() {
+        return refCount.get();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Advice to the operating system on how a region of a memory mapped Bytes will be accessed.
+ * <p>This corresponds to the advice given with <tt>madvise</tt> on POSIX systems.  Advice is a hint and may be ignored
+ * in some environments.  It never changes the contents of the Bytes.</p>
+ *
+ * @see Bytes#advise(MemoryAdvice, long, long)
+ */
+public enum MemoryAdvice {
+    /**
+     * No special treatment, the default.
+     */
+    NORMAL,
+    /**
+     * Pages will be accessed in sequential order, so they can be read ahead aggressively and freed soon after.
+     */
+    SEQUENTIAL,
+    /**
+     * Pages will be accessed in random order, so read ahead is not useful.
+     */
+    RANDOM,
+    /**
+     * Pages will be accessed soon, so they can be read ahead now.
+     */
+    WILLNEED,
+    /**
+     * Pages will not be accessed soon, so they can be dropped from memory.  Any changes to a mapped file are kept.
+     */
+    DONTNEED
+}
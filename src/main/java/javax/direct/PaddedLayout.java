@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * Lays out a number of fields, such as counters or sequences, each in its own cache line so threads updating
+ * neighbouring fields do not suffer false sharing.
+ * <p>Each field starts a block of <i>spacing</i> bytes.  Use {@link #CACHE_LINE_SIZE} to give each field its own
+ * cache line, or {@link #CACHE_LINE_PAIR_SIZE} to also avoid the adjacent line prefetcher pulling in a neighbour.
+ * When the Bytes is created with an alignment of at least the spacing, no field crosses a cache line.</p>
+ * <blockquote><pre>
+ * PaddedLayout layout = new PaddedLayout(3, PaddedLayout.CACHE_LINE_PAIR_SIZE);
+ * Bytes counters = factory.create(ByteOrder.nativeOrder(), layout.size(), layout.alignment());
+ * counters.getAndAddLong(layout.offsetOf(1), 1);</pre></blockquote>
+ */
+public final class PaddedLayout {
+    /**
+     * The size of a cache line on most current processors.
+     */
+    public static final int CACHE_LINE_SIZE = 64;
+    /**
+     * The size of the pair of cache lines fetched together by an adjacent line prefetcher.
+     */
+    public static final int CACHE_LINE_PAIR_SIZE = 128;
+
+    private final int fields;
+    private final int spacing;
+
+    /**
+     * @param fields  the number of fields to lay out.
+     * @param spacing the bytes between the start of each field, a power of two of at least 8.
+     * @throws IllegalArgumentException if fields is negative or spacing is not a power of two of at least 8.
+     */
+    public PaddedLayout(int fields, int spacing) {
+        if (fields < 0)
+            throw new IllegalArgumentException("fields must not be negative, was " + fields);
+        if (spacing < 8 || Integer.bitCount(spacing) != 1)
+            throw new IllegalArgumentException("spacing must be a power of two of at least 8, was " + spacing);
+        this.fields = fields;
+        this.spacing = spacing;
+    }
+
+    public int fields() {
+        return fields;
+    }
+
+    /**
+     * @return the alignment to create the Bytes with, the same as the spacing.
+     */
+    public int alignment() {
+        return spacing;
+    }
+
+    /**
+     * @return the size of Bytes required for all the fields.
+     */
+    public long size() {
+        return (long) fields * spacing;
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the offset of the field, aligned to the spacing.
+     * @throws IndexOutOfBoundsException if the field is negative or not less than fields()
+     */
+    public long offsetOf(int field) {
+        if (field < 0 || field >= fields)
+            throw new IndexOutOfBoundsException("field: " + field + " fields: " + fields);
+        return (long) field * spacing;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * A buddy allocator whose metadata and data are both held in one Bytes, usually a memory mapped file, so structures
+ * built in it survive a restart and can be used again as soon as the file is mapped.
+ * <p>Blocks are a power of two in size, from 32 bytes, aligned to their size relative to {@link #HEADER_SIZE}, and
+ * each starts with an 8 byte header holding its size class and whether it is allocated.  Free blocks of each size
+ * class are kept in a doubly linked list.  A malloc takes a block from the smallest size class with a free block,
+ * splitting it in half until it is the size required, and only takes new blocks from the top of the heap when there
+ * is no free block large enough.  A free merges the block with its buddy, the other half of the block it was split
+ * from, for as long as the buddy is also free, so freed memory can be reused by any size class.</p>
+ * <p>As the header takes 8 bytes, a request for <tt>2<sup>n</sup></tt> bytes uses a block of <tt>2<sup>n+1</sup></tt>
+ * bytes; structures which can choose their size should request <tt>2<sup>n</sup> - 8</tt> bytes.</p>
+ * <p>Offsets are relative to the start of the Bytes so they are stable across restarts and can be stored in the heap
+ * itself; {@link #root(long)} records where an application's structure starts.</p>
+ * <h4>Crash consistency</h4>
+ * <p>The block headers are the record of what is allocated.  Each is a single long written after the rest of the
+ * change it records is complete, and the free lists are only an index over them.  A block is split by writing the
+ * headers of its upper halves before its own, and merged by writing the header of the lower buddy before clearing the
+ * upper one, so a scan of the headers sees either the whole block or its halves.  A heap which was not closed is
+ * recovered when it is next opened by rebuilding the free lists, and merging free buddies, from the block headers, so
+ * a process which dies part way through a malloc or free leaves the heap consistent.  A block returned by malloc but
+ * not yet linked into the application's structure when the process dies remains allocated.  This protects against
+ * the process dying; to survive the machine failing, changes must also be forced to disk e.g. with
+ * {@link Bytes#force(long, long)}.</p>
+ * <p>A PersistentHeap is thread safe but the Bytes should only be used by one process at a time.</p>
+ */
+public class PersistentHeap implements Closeable {
+    private static final long MAGIC = 0x3130504145484A44L; // "DJHEAP01" in little endian.
+    private static final long MAGIC_OFFSET = 0;
+    private static final long TOP = 16;
+    private static final long CLEAN = 24;
+    private static final long ROOT = 32;
+    private static final long FREE_LISTS = 64;
+    // a free block holds its header and the next and previous blocks in its free list.
+    private static final int MIN_CLASS = 5;
+    private static final int MAX_CLASS = 62;
+    /**
+     * The offset of the first block, after the header and the head of each size class's free list.
+     */
+    public static final long HEADER_SIZE = FREE_LISTS + (MAX_CLASS + 1) * 8;
+
+    // block header: a check value, the size class and whether the block is allocated.
+    private static final long BLOCK_CHECK = 0xB10C0000L << 32;
+    private static final long ALLOCATED = 1;
+
+    private final Bytes bytes;
+    private final boolean ownsBytes;
+    private boolean closed = false;
+
+    /**
+     * Use a Bytes as a heap, formatting it if it has never been used as one, or recovering it if it was not closed.
+     * The Bytes is not released on close.
+     *
+     * @param bytes to hold the heap.
+     * @throws IllegalArgumentException if the Bytes is too small to hold a block, or smaller than the heap it holds.
+     */
+    public PersistentHeap(Bytes bytes) {
+        this(bytes, false);
+    }
+
+    private PersistentHeap(Bytes bytes, boolean ownsBytes) {
+        if (bytes.capacity() < HEADER_SIZE + (1 << MIN_CLASS))
+            throw new IllegalArgumentException("Bytes too small for a heap, capacity: " + bytes.capacity());
+        this.bytes = bytes;
+        this.ownsBytes = ownsBytes;
+        if (bytes.getLong(MAGIC_OFFSET) != MAGIC) {
+            format();
+        } else {
+            // the heap may be remapped larger, but not smaller than the blocks already used.
+            long top = bytes.getLong(TOP);
+            if (top < HEADER_SIZE || top > bytes.capacity())
+                throw new IllegalArgumentException("Bytes of capacity " + bytes.capacity()
+                        + " too small for a heap with top " + top);
+            if (bytes.getLong(CLEAN) == 0)
+                recover();
+        }
+        bytes.putOrderedLong(CLEAN, 0);
+    }
+
+    /**
+     * Map a file and use it as a heap, as {@link #PersistentHeap(Bytes)} does.  The mapping is released on close.
+     *
+     * @param factory to map the file with.
+     * @param file    to map.
+     * @param size    of the mapping, which may be larger than the last time the file was mapped.
+     * @return the heap.
+     */
+    public static PersistentHeap open(BytesFactory factory, File file, long size) {
+        Bytes bytes = factory.map(file, size);
+        try {
+            return new PersistentHeap(bytes, true);
+        } catch (RuntimeException e) {
+            bytes.releaseOwner();
+            throw e;
+        }
+    }
+
+    private void format() {
+        for (long offset = MAGIC_OFFSET + 8; offset < HEADER_SIZE; offset += 8)
+            bytes.putLong(offset, 0);
+        bytes.putLong(TOP, HEADER_SIZE);
+        // written last so a partly formatted heap is formatted again.
+        bytes.putOrderedLong(MAGIC_OFFSET, MAGIC);
+    }
+
+    private void recover() {
+        for (int sizeClass = 0; sizeClass <= MAX_CLASS; sizeClass++)
+            bytes.putLong(freeList(sizeClass), 0);
+        long top = bytes.getLong(TOP);
+        for (long block = HEADER_SIZE; block < top; ) {
+            long header = bytes.getLong(block);
+            if ((header & ~0xFFFFFFFFL) != BLOCK_CHECK)
+                throw new IllegalStateException("Corrupt block header at " + block);
+            int sizeClass = (int) (header >>> 1) & 0xFF;
+            if (sizeClass < MIN_CLASS || sizeClass > MAX_CLASS || block + (1L << sizeClass) > top)
+                throw new IllegalStateException("Corrupt block header at " + block);
+            // only the buddies below have been scanned and are in the free lists.
+            if ((header & ALLOCATED) == 0)
+                insertFree(block, sizeClass, block);
+            block += 1L << sizeClass;
+        }
+    }
+
+    public Bytes bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the offset of the application's root structure, or 0 if none has been set.
+     */
+    public long root() {
+        return bytes.getVolatileLong(ROOT);
+    }
+
+    /**
+     * Record the offset of the application's root structure, so it can be found after a restart.
+     *
+     * @param offset of the root structure.
+     */
+    public void root(long offset) {
+        bytes.putOrderedLong(ROOT, offset);
+    }
+
+    /**
+     * Allocate a block of at least <tt>size</tt> bytes.  Its contents are undefined.
+     *
+     * @param size required.
+     * @return the offset of the block in the Bytes, or -1 if there is not enough space.
+     */
+    public synchronized long malloc(long size) {
+        checkOpen();
+        if (size < 0)
+            throw new IllegalArgumentException("size: " + size);
+        int sizeClass = Math.max(MIN_CLASS, 64 - Long.numberOfLeadingZeros(size + 8 - 1));
+        if (sizeClass > MAX_CLASS)
+            return -1;
+        for (int larger = sizeClass; larger <= MAX_CLASS; larger++) {
+            long block = pop(larger);
+            if (block != 0) {
+                // free the upper halves, then claim the lower half, so until then the block is still whole and free.
+                for (int half = larger - 1; half >= sizeClass; half--) {
+                    bytes.putLong(block + (1L << half), BLOCK_CHECK | half << 1);
+                    push(half, block + (1L << half));
+                }
+                bytes.putOrderedLong(block, BLOCK_CHECK | sizeClass << 1 | ALLOCATED);
+                return block + 8;
+            }
+        }
+        return mallocFromTop(sizeClass);
+    }
+
+    private long mallocFromTop(int sizeClass) {
+        long size = 1L << sizeClass;
+        long top = bytes.getLong(TOP);
+        long block = HEADER_SIZE + ((top - HEADER_SIZE + size - 1) & -size);
+        long newTop = block + size;
+        if (newTop > bytes.capacity() || newTop < 0)
+            return -1;
+        // the space skipped to align the block becomes the largest aligned free blocks which fit.
+        for (long gap = top; gap < block; gap += 1L << Long.numberOfTrailingZeros(gap - HEADER_SIZE))
+            bytes.putLong(gap, BLOCK_CHECK | Long.numberOfTrailingZeros(gap - HEADER_SIZE) << 1);
+        // the blocks beyond the top are ignored until the top is moved past them.
+        bytes.putLong(block, BLOCK_CHECK | sizeClass << 1 | ALLOCATED);
+        bytes.putOrderedLong(TOP, newTop);
+        // only once they are below the top can the gaps be merged with their buddies, as recovery would.
+        for (long gap = top; gap < block; ) {
+            int gapClass = Long.numberOfTrailingZeros(gap - HEADER_SIZE);
+            insertFree(gap, gapClass, gap);
+            gap += 1L << gapClass;
+        }
+        return block + 8;
+    }
+
+    /**
+     * Free a block so it can be allocated again.
+     *
+     * @param offset of the block as returned by {@link #malloc(long)}.
+     * @throws IllegalArgumentException if the offset is not of an allocated block.
+     */
+    public synchronized void free(long offset) {
+        checkOpen();
+        long block = offset - 8;
+        long header = block < HEADER_SIZE || block >= bytes.getLong(TOP) ? 0 : bytes.getLong(block);
+        if ((header & ~0xFFFFFFFFL) != BLOCK_CHECK || (header & ALLOCATED) == 0)
+            throw new IllegalArgumentException("Not an allocated block: " + offset);
+        // once the header says free, recovery will find the block whether or not it is in the free list.
+        bytes.putOrderedLong(block, header & ~ALLOCATED);
+        insertFree(block, (int) (header >>> 1) & 0xFF, bytes.getLong(TOP));
+    }
+
+    /**
+     * Add a block whose header says it is free to the free lists, first merging it with its buddy for as long as the
+     * buddy is free and starts below <tt>limit</tt>.
+     */
+    private void insertFree(long block, int sizeClass, long limit) {
+        for (; sizeClass < MAX_CLASS; sizeClass++) {
+            long buddy = HEADER_SIZE + ((block - HEADER_SIZE) ^ (1L << sizeClass));
+            // a buddy below the top always starts a block, but may have been split.
+            if (buddy >= limit || bytes.getLong(buddy) != (BLOCK_CHECK | sizeClass << 1))
+                break;
+            unlink(sizeClass, buddy);
+            long lower = Math.min(block, buddy);
+            bytes.putOrderedLong(lower, BLOCK_CHECK | (sizeClass + 1) << 1);
+            bytes.putLong(Math.max(block, buddy), 0);
+            block = lower;
+        }
+        push(sizeClass, block);
+    }
+
+    /**
+     * @param offset of the block as returned by {@link #malloc(long)}.
+     * @return the number of usable bytes in the block, at least the size requested.
+     */
+    public long sizeOf(long offset) {
+        long header = bytes.getLong(offset - 8);
+        return (1L << ((header >>> 1) & 0xFF)) - 8;
+    }
+
+    private long freeList(int sizeClass) {
+        return FREE_LISTS + sizeClass * 8;
+    }
+
+    // each free block holds the next block in its list at +8 and the previous at +16, or 0 for none.
+    private long pop(int sizeClass) {
+        long head = bytes.getLong(freeList(sizeClass));
+        if (head != 0)
+            unlink(sizeClass, head);
+        return head;
+    }
+
+    private void push(int sizeClass, long block) {
+        long next = bytes.getLong(freeList(sizeClass));
+        bytes.putLong(block + 8, next);
+        bytes.putLong(block + 16, 0);
+        if (next != 0)
+            bytes.putLong(next + 16, block);
+        bytes.putLong(freeList(sizeClass), block);
+    }
+
+    private void unlink(int sizeClass, long block) {
+        long next = bytes.getLong(block + 8), prev = bytes.getLong(block + 16);
+        bytes.putLong(prev == 0 ? freeList(sizeClass) : prev + 8, next);
+        if (next != 0)
+            bytes.putLong(next + 16, prev);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("PersistentHeap has been closed");
+    }
+
+    /**
+     * Mark the heap as cleanly closed, so the next open need not recover it, and force it to disk.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        bytes.putOrderedLong(CLEAN, 1);
+        bytes.force(0, bytes.getLong(TOP));
+        if (ownsBytes)
+            bytes.releaseOwner();
+    }
+}
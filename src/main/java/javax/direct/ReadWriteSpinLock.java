@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * A reader writer lock on a long at an offset in a Bytes, updated with {@link Bytes#compareAndSwapLong(long, long, long)}.
+ * <p>The top bit of the long is set while a writer holds, or is waiting for, the lock and the rest is the number of
+ * readers holding it.  A waiting writer stops new readers taking the lock, so writers are not starved.  As the state is
+ * only in the Bytes, a mapped Bytes can be shared between threads and processes.  The lock is not reentrant, and
+ * waiters spin.</p>
+ * <p>The long should be 8 byte aligned.</p>
+ */
+public class ReadWriteSpinLock {
+    private static final long WRITER = Long.MIN_VALUE;
+
+    private final Bytes bytes;
+    private final long offset;
+
+    public ReadWriteSpinLock(Bytes bytes, long offset) {
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    public void readLock() {
+        for (; ; ) {
+            long value = bytes.getVolatileLong(offset);
+            if ((value & WRITER) == 0 && bytes.compareAndSwapLong(offset, value, value + 1))
+                return;
+            Thread.onSpinWait();
+        }
+    }
+
+    public void readUnlock() {
+        long value = bytes.getAndAddLong(offset, -1);
+        assert (value & ~WRITER) > 0 : "Not read locked";
+    }
+
+    public void writeLock() {
+        // claim the writer bit, then wait for the readers to leave.
+        for (; ; ) {
+            long value = bytes.getVolatileLong(offset);
+            if ((value & WRITER) == 0 && bytes.compareAndSwapLong(offset, value, value | WRITER))
+                break;
+            Thread.onSpinWait();
+        }
+        while (bytes.getVolatileLong(offset) != WRITER)
+            Thread.onSpinWait();
+    }
+
+    public void writeUnlock() {
+        assert bytes.getLong(offset) == WRITER : "Not write locked";
+        bytes.putOrderedLong(offset, 0);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * How the reference count of a Bytes is held.  Either way the semantics of {@link ReferenceCounted} are the same;
+ * the choice only affects performance.
+ *
+ * @see BytesFactory#referenceCounting(ReferenceCounting)
+ */
+public enum ReferenceCounting {
+    /**
+     * One word updated with compare and swap.  This is the cheapest when a Bytes is reserved and released by one thread
+     * at a time, and referenceCount() is a single read.
+     */
+    ATOMIC,
+    /**
+     * <p>Reserve and release update one of several padded counters chosen by the calling thread, so many threads
+     * reserving and releasing the same Bytes do not contend on one cache line.  A release on one thread may balance a
+     * reserve on another, so a single stripe may be negative.</p>
+     * <p>The reference the Bytes is created with is held in a separate owner word, and is only released with
+     * {@link Bytes#releaseOwner()}.  While it is held the count cannot reach zero, so neither reserve() nor release()
+     * reads any other stripe.  releaseOwner() folds the stripes into one count: it marks the owner word as folding,
+     * then closes each stripe in turn with a compare and swap which replaces its value with a closed marker and adds
+     * the value to the folded count.  A reserve() or release() which finds its stripe closed, or whose compare and swap
+     * fails because the stripe was closed under it, applies its change to the folded count instead, so no change racing
+     * the fold is lost.  The folded count holds one extra reference until the last stripe is closed, so it cannot reach
+     * zero part way through the fold.  Once every stripe is closed the Bytes behaves as {@link #ATOMIC}, and as only
+     * the folded count can reach zero, reaching zero is detected exactly once.  This suits a Bytes which is shared by
+     * many readers for most of its life and released by its owner at the end.</p>
+     * <p>referenceCount() sums the owner word and the stripes, so it is slower than for ATOMIC and only a moment in
+     * time value.</p>
+     */
+    STRIPED
+}
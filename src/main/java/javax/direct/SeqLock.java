@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A sequence lock on a long at an offset in a Bytes, for data which is read far more often than it is written.
+ * <p>The long is even when no write is in progress.  A writer makes it odd before changing the data and even again
+ * after.  Readers never write to the Bytes; they read the sequence, read the data, and retry if the sequence has
+ * changed.  As the state is only in the Bytes, a mapped Bytes can be shared between threads and processes.</p>
+ * <blockquote><pre>
+ * long seq;
+ * do {
+ *     seq = lock.readBegin();
+ *     price = bytes.getDouble(PRICE);
+ *     quantity = bytes.getLong(QUANTITY);
+ * } while (lock.readRetry(seq));</pre></blockquote>
+ * <p>Values read between readBegin() and readRetry() may be inconsistent and must not be acted on until readRetry()
+ * returns false.  The long should be 8 byte aligned.</p>
+ */
+public class SeqLock {
+    private final Bytes bytes;
+    private final long offset;
+
+    public SeqLock(Bytes bytes, long offset) {
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    /**
+     * Start a read, waiting for any write in progress to finish.
+     *
+     * @return the sequence to pass to {@link #readRetry(long)}
+     */
+    public long readBegin() {
+        long seq;
+        while (((seq = bytes.getVolatileLong(offset)) & 1) != 0)
+            Thread.onSpinWait();
+        return seq;
+    }
+
+    /**
+     * Finish a read.
+     *
+     * @param seq returned by {@link #readBegin()}
+     * @return true if there was a write during the read, so it must be retried.
+     */
+    public boolean readRetry(long seq) {
+        // the data reads must not be reordered after the read of the sequence.
+        VarHandle.acquireFence();
+        return bytes.getVolatileLong(offset) != seq;
+    }
+
+    /**
+     * Start a write, waiting for any other writer to finish.
+     * <p>The sequence is made odd with a compare and swap, rather than an ordered write, so more than one writer can
+     * use the lock and no write to the data can become visible before the sequence is odd.</p>
+     */
+    public void writeLock() {
+        for (; ; ) {
+            long seq = bytes.getVolatileLong(offset);
+            if ((seq & 1) == 0 && bytes.compareAndSwapLong(offset, seq, seq + 1))
+                return;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Finish a write, making the sequence even with an ordered write so the changes to the data are visible first.
+     */
+    public void writeUnlock() {
+        long seq = bytes.getLong(offset);
+        assert (seq & 1) != 0 : "Not write locked";
+        bytes.putOrderedLong(offset, seq + 1);
+    }
+}
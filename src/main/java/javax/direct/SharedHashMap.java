@@ -0,0 +1,584 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hash map of fixed size keys to fixed size values held entirely in one Bytes, usually a memory mapped file, so it
+ * can be shared by many processes and survives a restart.
+ * <p>Keys are either longs, for a map with a key size of 8, or the key size bytes remaining in a Bytes.  A Bytes key
+ * is read and compared as longs, so every Bytes used as a key should have the same byte order, and with a key size of
+ * 8 a Bytes key is the same key as the long read from it.</p>
+ * <p>The map is divided into segments, each an open addressed table with its own {@link SpinLock}.  If a lock has been
+ * held for a long time and its owner is no longer running, the lock is taken over and the segment is recovered.</p>
+ * <h4>Crash safety</h4>
+ * <p>Entries never move.  A new entry has its key and value written before its state is set with an ordered write,
+ * and a removed entry only has its state changed, so a process dying while it holds a lock cannot leave a partial
+ * entry visible.  An update of the value of an existing key is never written in place; the new value is written to a
+ * free entry with a version one higher, which is published before the old entry is removed.  If the process dies
+ * between the two, the segment is recovered by removing the entry with the lower version.  A removed entry is left as
+ * a tombstone, which is reused by later puts, unless the next entry is empty, in which case it and any tombstones
+ * before it are made empty so lookups of missing keys stay short.</p>
+ * <p>A SharedHashMap is thread safe.  The capacity is fixed when the map is first created.  Only one process formats
+ * a new map; any other opening it at the same time waits for the format to finish, or takes it over if the
+ * formatting process has died.</p>
+ */
+public class SharedHashMap implements Closeable {
+    private static final long MAGIC = 0x3130504148534A44L; // "DJSHAP01" in little endian.
+    private static final long MAGIC_OFFSET = 0;
+    // held in place of the magic by the process formatting the map, in the top half, with its process id below.
+    private static final long FORMATTING = 0x54494E49L << 32; // "INIT" in little endian.
+    private static final long SEGMENTS = 8;
+    private static final long ENTRIES_PER_SEGMENT = 12;
+    private static final long VALUE_SIZE = 16;
+    private static final long KEY_SIZE = 20;
+    private static final int HEADER_SIZE = PaddedLayout.CACHE_LINE_PAIR_SIZE;
+
+    // segment header
+    private static final long LOCK = 0;
+    private static final long SIZE = 8;
+    private static final int SEGMENT_HEADER_SIZE = PaddedLayout.CACHE_LINE_PAIR_SIZE;
+
+    // entry: state, version, key, then the value after the key.
+    private static final long STATE = 0;
+    private static final long VERSION = 4;
+    private static final long KEY = 8;
+    private static final int EMPTY = 0, USED = 1, REMOVED = 2;
+
+    private static final long STALE_LOCK_CHECK_NANOS = 100_000_000L;
+
+    private final Bytes bytes;
+    private final boolean ownsBytes;
+    private final int segments;
+    private final int entriesPerSegment;
+    private final int keySize;
+    private final int valueSize;
+    private final long valueOffset;
+    private final int entrySize;
+    private final long segmentSize;
+    private final SpinLock[] locks;
+    private volatile boolean closed = false;
+
+    /**
+     * Use a Bytes as a map of long keys, formatting it if it has never been used as one.  The Bytes is not released on
+     * close.
+     *
+     * @param bytes     to hold the map, of at least {@link #sizeFor(int, long, int)} bytes.
+     * @param segments  the number of segments, a power of two.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param valueSize the size of each value, a multiple of 8.
+     * @throws IllegalArgumentException if the Bytes is too small, or the parameters do not match those the Bytes was
+     *                                  formatted with.
+     */
+    public SharedHashMap(Bytes bytes, int segments, long entries, int valueSize) {
+        this(bytes, false, segments, entries, 8, valueSize);
+    }
+
+    /**
+     * Use a Bytes as a map, formatting it if it has never been used as one.  The Bytes is not released on close.
+     *
+     * @param bytes     to hold the map, of at least {@link #sizeFor(int, long, int, int)} bytes.
+     * @param segments  the number of segments, a power of two.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param keySize   the size of each key, a positive multiple of 8.
+     * @param valueSize the size of each value, a multiple of 8.
+     * @throws IllegalArgumentException if the Bytes is too small, or the parameters do not match those the Bytes was
+     *                                  formatted with.
+     */
+    public SharedHashMap(Bytes bytes, int segments, long entries, int keySize, int valueSize) {
+        this(bytes, false, segments, entries, keySize, valueSize);
+    }
+
+    private SharedHashMap(Bytes bytes, boolean ownsBytes, int segments, long entries, int keySize, int valueSize) {
+        if (segments <= 0 || Integer.bitCount(segments) != 1)
+            throw new IllegalArgumentException("segments must be a power of two, was " + segments);
+        if (keySize <= 0 || keySize % 8 != 0)
+            throw new IllegalArgumentException("keySize must be a positive multiple of 8, was " + keySize);
+        if (valueSize < 0 || valueSize % 8 != 0)
+            throw new IllegalArgumentException("valueSize must be a multiple of 8, was " + valueSize);
+        this.bytes = bytes;
+        this.ownsBytes = ownsBytes;
+        this.segments = segments;
+        this.entriesPerSegment = entriesPerSegment(segments, entries);
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.valueOffset = KEY + keySize;
+        this.entrySize = (int) valueOffset + valueSize;
+        this.segmentSize = SEGMENT_HEADER_SIZE + (long) entriesPerSegment * entrySize;
+        long required = sizeFor(segments, entries, keySize, valueSize);
+        if (bytes.capacity() < required)
+            throw new IllegalArgumentException("Bytes too small, capacity: " + bytes.capacity()
+                    + " required: " + required);
+        this.locks = new SpinLock[segments];
+        for (int i = 0; i < segments; i++)
+            locks[i] = new SpinLock(bytes, segmentOffset(i) + LOCK);
+        if (claimFormat())
+            format();
+        else if (bytes.getInt(SEGMENTS) != segments
+                || bytes.getInt(ENTRIES_PER_SEGMENT) != entriesPerSegment
+                || bytes.getInt(KEY_SIZE) != keySize
+                || bytes.getInt(VALUE_SIZE) != valueSize) {
+            throw new IllegalArgumentException("Bytes was formatted with segments: " + bytes.getInt(SEGMENTS)
+                    + ", entriesPerSegment: " + bytes.getInt(ENTRIES_PER_SEGMENT)
+                    + ", keySize: " + bytes.getInt(KEY_SIZE)
+                    + ", valueSize: " + bytes.getInt(VALUE_SIZE));
+        }
+    }
+
+    /**
+     * Map a file and use it as a map of long keys, as {@link #SharedHashMap(Bytes, int, long, int)} does.  The mapping
+     * is released on close.
+     *
+     * @param factory   to map the file with.
+     * @param file      to map.
+     * @param segments  the number of segments, a power of two.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param valueSize the size of each value, a multiple of 8.
+     * @return the map.
+     */
+    public static SharedHashMap open(BytesFactory factory, File file, int segments, long entries, int valueSize) {
+        return open(factory, file, segments, entries, 8, valueSize);
+    }
+
+    /**
+     * Map a file and use it as a map, as {@link #SharedHashMap(Bytes, int, long, int, int)} does.  The mapping is
+     * released on close.
+     *
+     * @param factory   to map the file with.
+     * @param file      to map.
+     * @param segments  the number of segments, a power of two.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param keySize   the size of each key, a positive multiple of 8.
+     * @param valueSize the size of each value, a multiple of 8.
+     * @return the map.
+     */
+    public static SharedHashMap open(BytesFactory factory, File file, int segments, long entries, int keySize,
+                                     int valueSize) {
+        Bytes bytes = factory.map(file, sizeFor(segments, entries, keySize, valueSize));
+        try {
+            return new SharedHashMap(bytes, true, segments, entries, keySize, valueSize);
+        } catch (RuntimeException e) {
+            bytes.releaseOwner();
+            throw e;
+        }
+    }
+
+    /**
+     * @param segments  the number of segments.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param valueSize the size of each value.
+     * @return the size of Bytes required for a map of long keys.
+     */
+    public static long sizeFor(int segments, long entries, int valueSize) {
+        return sizeFor(segments, entries, 8, valueSize);
+    }
+
+    /**
+     * @param segments  the number of segments.
+     * @param entries   the number of entries the map must be able to hold.
+     * @param keySize   the size of each key.
+     * @param valueSize the size of each value.
+     * @return the size of Bytes required.
+     */
+    public static long sizeFor(int segments, long entries, int keySize, int valueSize) {
+        long entrySize = KEY + keySize + valueSize;
+        return HEADER_SIZE + segments * (SEGMENT_HEADER_SIZE + entriesPerSegment(segments, entries) * entrySize);
+    }
+
+    // a load factor of at most 3/4, rounded up to a power of two.
+    private static int entriesPerSegment(int segments, long entries) {
+        long perSegment = Math.max(4, (entries * 4 / 3 + segments - 1) / segments);
+        if (perSegment > 1 << 30)
+            throw new IllegalArgumentException("Too many entries per segment, use more segments");
+        return Integer.highestOneBit((int) perSegment - 1) << 1;
+    }
+
+    /**
+     * @return true if this should format the map, false once another process has formatted it.
+     */
+    private boolean claimFormat() {
+        for (; ; ) {
+            long magic = bytes.getVolatileLong(MAGIC_OFFSET);
+            if (magic == MAGIC)
+                return false;
+            if ((magic & ~0xFFFFFFFFL) == FORMATTING && SpinLock.isAlive((int) magic))
+                LockSupport.parkNanos(100_000);
+            // never formatted, partly formatted or its formatter died.
+            else if (bytes.compareAndSwapLong(MAGIC_OFFSET, magic, FORMATTING | SpinLock.PID))
+                return true;
+        }
+    }
+
+    private void format() {
+        bytes.putInt(SEGMENTS, segments);
+        bytes.putInt(ENTRIES_PER_SEGMENT, entriesPerSegment);
+        bytes.putInt(VALUE_SIZE, valueSize);
+        bytes.putInt(KEY_SIZE, keySize);
+        bytes.fillByte(HEADER_SIZE, segments * segmentSize, (byte) 0);
+        // written last so a partly formatted map is formatted again, and replacing the claim so waiters proceed.
+        bytes.putOrderedLong(MAGIC_OFFSET, MAGIC);
+    }
+
+    public Bytes bytes() {
+        return bytes;
+    }
+
+    public int keySize() {
+        return keySize;
+    }
+
+    public int valueSize() {
+        return valueSize;
+    }
+
+    /**
+     * @return the number of entries, a moment in time value as each segment is counted in turn.
+     */
+    public long size() {
+        checkOpen();
+        long size = 0;
+        for (int i = 0; i < segments; i++)
+            size += bytes.getVolatileLong(segmentOffset(i) + SIZE);
+        return size;
+    }
+
+    /**
+     * Copy the value for a key into <tt>value</tt> at its position, incrementing its position by the value size.
+     *
+     * @param key   to look up.
+     * @param value to copy the value into.
+     * @return true if the key was found, false if not, in which case value is unchanged.
+     * @throws BufferOverflowException if value has fewer than the value size bytes remaining.
+     * @throws IllegalStateException   if the key size is not 8.
+     */
+    public boolean get(long key, Bytes value) {
+        checkLongKey();
+        return get(null, key, hash(key), value);
+    }
+
+    /**
+     * Copy the value for a key into <tt>value</tt> at its position, incrementing its position by the value size.
+     *
+     * @param key   to look up, the key size bytes remaining.  Its position is unchanged.
+     * @param value to copy the value into.
+     * @return true if the key was found, false if not, in which case value is unchanged.
+     * @throws BufferOverflowException  if value has fewer than the value size bytes remaining.
+     * @throws IllegalArgumentException if key does not have the key size bytes remaining.
+     */
+    public boolean get(Bytes key, Bytes value) {
+        return get(key, 0, hash(key), value);
+    }
+
+    private boolean get(Bytes key, long longKey, long hash, Bytes value) {
+        if (value.remaining() < valueSize)
+            throw new BufferOverflowException();
+        long segment = segmentFor(hash);
+        lock(segment);
+        try {
+            long entry = find(segment, hash, key, longKey);
+            if (entry < 0)
+                return false;
+            for (int i = 0; i < valueSize; i += 8)
+                value.putLong(bytes.getLong(entry + valueOffset + i));
+            return true;
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    /**
+     * @param key to look up.
+     * @return true if the key is present.
+     * @throws IllegalStateException if the key size is not 8.
+     */
+    public boolean containsKey(long key) {
+        checkLongKey();
+        return containsKey(null, key, hash(key));
+    }
+
+    /**
+     * @param key to look up, the key size bytes remaining.  Its position is unchanged.
+     * @return true if the key is present.
+     * @throws IllegalArgumentException if key does not have the key size bytes remaining.
+     */
+    public boolean containsKey(Bytes key) {
+        return containsKey(key, 0, hash(key));
+    }
+
+    private boolean containsKey(Bytes key, long longKey, long hash) {
+        long segment = segmentFor(hash);
+        lock(segment);
+        try {
+            return find(segment, hash, key, longKey) >= 0;
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    /**
+     * Set the value for a key from the value size bytes of <tt>value</tt> at its position, incrementing its position by
+     * the value size.
+     *
+     * @param key   to set.
+     * @param value to copy the value from.
+     * @throws BufferUnderflowException if value has fewer than the value size bytes remaining.
+     * @throws IllegalStateException    if the key size is not 8, or the segment for this key is full, which includes
+     *                                  having no free entry for the new value of an existing key.
+     */
+    public void put(long key, Bytes value) {
+        checkLongKey();
+        put(null, key, hash(key), value);
+    }
+
+    /**
+     * Set the value for a key from the value size bytes of <tt>value</tt> at its position, incrementing its position by
+     * the value size.
+     *
+     * @param key   to set, the key size bytes remaining.  Its position is unchanged.
+     * @param value to copy the value from.
+     * @throws BufferUnderflowException if value has fewer than the value size bytes remaining.
+     * @throws IllegalArgumentException if key does not have the key size bytes remaining.
+     * @throws IllegalStateException    if the segment for this key is full, which includes having no free entry for
+     *                                  the new value of an existing key.
+     */
+    public void put(Bytes key, Bytes value) {
+        put(key, 0, hash(key), value);
+    }
+
+    private void put(Bytes key, long longKey, long hash, Bytes value) {
+        if (value.remaining() < valueSize)
+            throw new BufferUnderflowException();
+        long segment = segmentFor(hash);
+        lock(segment);
+        try {
+            long old = find(segment, hash, key, longKey);
+            long entry = findFree(segment, hash);
+            if (entry < 0)
+                throw new IllegalStateException("Segment full, the map was created too small");
+            copyValue(value, entry);
+            copyKey(key, longKey, entry);
+            bytes.putInt(entry + VERSION, old < 0 ? 0 : bytes.getInt(old + VERSION) + 1);
+            // the entry is only visible once it is complete.
+            bytes.putOrderedInt(entry + STATE, USED);
+            if (old >= 0)
+                retire(segment, old);
+            else
+                bytes.putOrderedLong(segment + SIZE, bytes.getLong(segment + SIZE) + 1);
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    /**
+     * @param key to remove.
+     * @return true if the key was removed, false if it was not present.
+     * @throws IllegalStateException if the key size is not 8.
+     */
+    public boolean remove(long key) {
+        checkLongKey();
+        return remove(null, key, hash(key));
+    }
+
+    /**
+     * @param key to remove, the key size bytes remaining.  Its position is unchanged.
+     * @return true if the key was removed, false if it was not present.
+     * @throws IllegalArgumentException if key does not have the key size bytes remaining.
+     */
+    public boolean remove(Bytes key) {
+        return remove(key, 0, hash(key));
+    }
+
+    private boolean remove(Bytes key, long longKey, long hash) {
+        long segment = segmentFor(hash);
+        lock(segment);
+        try {
+            long entry = find(segment, hash, key, longKey);
+            if (entry < 0)
+                return false;
+            retire(segment, entry);
+            bytes.putOrderedLong(segment + SIZE, bytes.getLong(segment + SIZE) - 1);
+            return true;
+        } finally {
+            unlock(segment);
+        }
+    }
+
+    private void checkLongKey() {
+        if (keySize != 8)
+            throw new IllegalStateException("long keys need a key size of 8, was " + keySize);
+    }
+
+    // a Bytes key is hashed from its longs so one long hashes as that long does.
+    private long hash(Bytes key) {
+        if (key.remaining() != keySize)
+            throw new IllegalArgumentException("Key must have " + keySize + " bytes remaining, had " + key.remaining());
+        long hash = 0;
+        for (int i = 0; i < keySize; i += 8)
+            hash = hash(hash) ^ key.getLong(key.position() + i);
+        return hash(hash);
+    }
+
+    private void copyKey(Bytes key, long longKey, long entry) {
+        if (key == null) {
+            bytes.putLong(entry + KEY, longKey);
+            return;
+        }
+        for (int i = 0; i < keySize; i += 8)
+            bytes.putLong(entry + KEY + i, key.getLong(key.position() + i));
+    }
+
+    private boolean keyEquals(long entry, Bytes key, long longKey) {
+        if (key == null)
+            return bytes.getLong(entry + KEY) == longKey;
+        for (int i = 0; i < keySize; i += 8)
+            if (bytes.getLong(entry + KEY + i) != key.getLong(key.position() + i))
+                return false;
+        return true;
+    }
+
+    private void copyValue(Bytes value, long entry) {
+        for (int i = 0; i < valueSize; i += 8)
+            bytes.putLong(entry + valueOffset + i, value.getLong());
+    }
+
+    private void retire(long segment, long entry) {
+        int mask = entriesPerSegment - 1;
+        int slot = (int) ((entry - entryOffset(segment, 0)) / entrySize);
+        if (bytes.getInt(entryOffset(segment, (slot + 1) & mask) + STATE) != EMPTY) {
+            bytes.putOrderedInt(entry + STATE, REMOVED);
+            return;
+        }
+        // no probe continues past an empty entry, so the tombstones just before one are not needed.
+        bytes.putOrderedInt(entry + STATE, EMPTY);
+        for (int i = 1; i < entriesPerSegment; i++) {
+            long previous = entryOffset(segment, (slot - i) & mask);
+            if (bytes.getInt(previous + STATE) != REMOVED)
+                break;
+            bytes.putOrderedInt(previous + STATE, EMPTY);
+        }
+    }
+
+    private long find(long segment, long hash, Bytes key, long longKey) {
+        int mask = entriesPerSegment - 1;
+        for (int i = 0, slot = (int) hash & mask; i < entriesPerSegment; i++, slot = (slot + 1) & mask) {
+            long entry = entryOffset(segment, slot);
+            int state = bytes.getInt(entry + STATE);
+            if (state == EMPTY)
+                return -1;
+            if (state == USED && keyEquals(entry, key, longKey))
+                return entry;
+        }
+        return -1;
+    }
+
+    // the first removed or empty entry, having already checked the key is not present.
+    private long findFree(long segment, long hash) {
+        int mask = entriesPerSegment - 1;
+        for (int i = 0, slot = (int) hash & mask; i < entriesPerSegment; i++, slot = (slot + 1) & mask) {
+            long entry = entryOffset(segment, slot);
+            if (bytes.getInt(entry + STATE) != USED)
+                return entry;
+        }
+        return -1;
+    }
+
+    private void lock(long segment) {
+        checkOpen();
+        if (lockFor(segment).lock(STALE_LOCK_CHECK_NANOS))
+            recover(segment);
+    }
+
+    // the owner died holding the lock, a key may have both its old and new entry, and the size may be wrong.
+    private void recover(long segment) {
+        Map<LongBuffer, Long> entries = new HashMap<>();
+        long size = 0;
+        for (int slot = 0; slot < entriesPerSegment; slot++) {
+            long entry = entryOffset(segment, slot);
+            if (bytes.getInt(entry + STATE) != USED)
+                continue;
+            long[] key = new long[keySize / 8];
+            for (int i = 0; i < key.length; i++)
+                key[i] = bytes.getLong(entry + KEY + i * 8);
+            Long other = entries.putIfAbsent(LongBuffer.wrap(key), entry);
+            if (other == null) {
+                size++;
+                continue;
+            }
+            // keep the newer version, allowing for the version wrapping.
+            long older = bytes.getInt(entry + VERSION) - bytes.getInt(other + VERSION) > 0 ? other : entry;
+            retire(segment, older);
+            entries.put(LongBuffer.wrap(key), older == entry ? other : entry);
+        }
+        bytes.putOrderedLong(segment + SIZE, size);
+    }
+
+    private void unlock(long segment) {
+        lockFor(segment).unlock();
+    }
+
+    private SpinLock lockFor(long segment) {
+        return locks[(int) ((segment - HEADER_SIZE) / segmentSize)];
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("SharedHashMap has been closed");
+    }
+
+    /**
+     * Release the mapping if this map was opened with one of the open() methods.  The entries remain in the Bytes for
+     * other processes and the next open.  The map must not be in use by other threads.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (ownsBytes)
+            bytes.releaseOwner();
+    }
+
+    private long segmentFor(long hash) {
+        return segmentOffset((int) (hash >>> 32) & (segments - 1));
+    }
+
+    private long segmentOffset(int index) {
+        return HEADER_SIZE + index * segmentSize;
+    }
+
+    private long entryOffset(long segment, int slot) {
+        return segment + SEGMENT_HEADER_SIZE + (long) slot * entrySize;
+    }
+
+    private static long hash(long key) {
+        // the murmur3 finalizer, so keys which differ in a few bits are spread over the segments and slots.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
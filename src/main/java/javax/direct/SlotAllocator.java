@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+/**
+ * A lock free allocator of fixed size slots within one Bytes, so records which are created and destroyed at a high
+ * rate need neither malloc nor the GC.
+ * <p>The Bytes starts with a header of {@link #HEADER_SIZE} bytes, followed by the slots.  Free slots are held in a
+ * Treiber stack; each free slot holds the index of the next one, and the head of the stack is a long in the header
+ * updated with {@link Bytes#compareAndSwapLong(long, long, long)}.  The upper half of the head is a tag which is
+ * incremented on every change so that a slot freed and reallocated between a read and a CAS of the head cannot
+ * corrupt the stack (the ABA problem).</p>
+ * <p>All the state is in the Bytes, so a mapped Bytes can be shared by many threads and processes, each with their own
+ * SlotAllocator.</p>
+ */
+public class SlotAllocator {
+    /**
+     * The size of the header, a cache line pair so the head does not share a line with a slot.
+     */
+    public static final int HEADER_SIZE = PaddedLayout.CACHE_LINE_PAIR_SIZE;
+
+    private static final long HEAD = 0;
+    private static final long SLOT_SIZE = 8;
+    private static final long SLOTS = 12;
+    private static final int NONE = 0;
+
+    private final Bytes bytes;
+    private final int slotSize;
+    private final int slots;
+
+    private SlotAllocator(Bytes bytes, int slotSize, int slots) {
+        this.bytes = bytes;
+        this.slotSize = slotSize;
+        this.slots = slots;
+    }
+
+    /**
+     * Divide a Bytes into as many slots as will fit after the header, and make every slot free.  This must be done
+     * once, before the Bytes is shared.
+     *
+     * @param bytes    to divide into slots.
+     * @param slotSize the size of each slot, a positive multiple of 8.
+     * @return a SlotAllocator for the Bytes.
+     * @throws IllegalArgumentException if the slotSize is not a positive multiple of 8 or there is no room for a slot.
+     */
+    public static SlotAllocator format(Bytes bytes, int slotSize) {
+        if (slotSize <= 0 || slotSize % 8 != 0)
+            throw new IllegalArgumentException("slotSize must be a positive multiple of 8, was " + slotSize);
+        long slots = Math.min((bytes.capacity() - HEADER_SIZE) / slotSize, Integer.MAX_VALUE - 1);
+        if (slots <= 0)
+            throw new IllegalArgumentException("No room for a slot of " + slotSize + " in " + bytes.capacity());
+        SlotAllocator allocator = new SlotAllocator(bytes, slotSize, (int) slots);
+        // each free slot links to the next, the last to none.
+        for (int i = 1; i <= slots; i++)
+            bytes.putInt(allocator.offsetOf(i), i < slots ? i + 1 : NONE);
+        bytes.putInt(SLOTS, (int) slots);
+        bytes.putLong(HEAD, 1);
+        // the slot size is written last, so attach() never sees it before the rest of the format.
+        bytes.putOrderedInt(SLOT_SIZE, slotSize);
+        return allocator;
+    }
+
+    /**
+     * Use a Bytes which has already been formatted, e.g. by another process.
+     *
+     * @param bytes previously formatted.
+     * @return a SlotAllocator for the Bytes.
+     * @throws IllegalStateException if the Bytes has not been formatted.
+     */
+    public static SlotAllocator attach(Bytes bytes) {
+        // read the slot size first, as it is written last.
+        int slotSize = bytes.getVolatileInt(SLOT_SIZE);
+        if (slotSize <= 0)
+            throw new IllegalStateException("Bytes has not been formatted");
+        return new SlotAllocator(bytes, slotSize, bytes.getInt(SLOTS));
+    }
+
+    public int slotSize() {
+        return slotSize;
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    /**
+     * Take a slot from the free list.
+     *
+     * @return the offset of the slot in the Bytes, or -1 if every slot is in use.
+     */
+    public long allocate() {
+        for (; ; ) {
+            long head = bytes.getVolatileLong(HEAD);
+            int index = (int) head;
+            if (index == NONE)
+                return -1;
+            long offset = offsetOf(index);
+            // this slot may be allocated by another thread before the CAS, in which case the tag will have changed.
+            int next = bytes.getVolatileInt(offset);
+            if (bytes.compareAndSwapLong(HEAD, head, nextTag(head) | (next & 0xFFFFFFFFL)))
+                return offset;
+        }
+    }
+
+    /**
+     * Return a slot to the free list.
+     *
+     * @param offset of the slot, as returned by {@link #allocate()}
+     * @throws IllegalArgumentException if the offset is not the start of a slot.
+     */
+    public void free(long offset) {
+        long relative = offset - HEADER_SIZE;
+        if (relative < 0 || relative % slotSize != 0 || relative / slotSize >= slots)
+            throw new IllegalArgumentException("Not the offset of a slot: " + offset);
+        int index = (int) (relative / slotSize) + 1;
+        for (; ; ) {
+            long head = bytes.getVolatileLong(HEAD);
+            bytes.putInt(offset, (int) head);
+            if (bytes.compareAndSwapLong(HEAD, head, nextTag(head) | index))
+                return;
+        }
+    }
+
+    private static long nextTag(long head) {
+        return ((head >>> 32) + 1) << 32;
+    }
+
+    // slot indices start at 1 so 0 can mean none.
+    private long offsetOf(int index) {
+        return HEADER_SIZE + (long) (index - 1) * slotSize;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A mutual exclusion lock on an int at an offset in a Bytes, taken with
+ * {@link Bytes#compareAndSwapInt(long, int, int)}.
+ * <p>The int is zero when unlocked, and the process id of the owner when locked, so a lock held by a process which
+ * has died can be identified and taken over with {@link #lock(long)}.  As the state is only in the Bytes, a mapped
+ * Bytes can be shared between threads and processes.  The lock is not reentrant, and should only be held for a short
+ * time as waiters spin.</p>
+ * <p>Taking over a lock assumes every process sharing it is in the same process id namespace, e.g. on the same host
+ * and not in separate containers.  Otherwise the owner's process id means nothing to a waiter, and a lock held by a
+ * running process may be taken over, corrupting the data it guards.  If the process id of an owner which died is
+ * reused by a new process before the lock is taken over, the lock is never taken over.</p>
+ * <p>The int should be 4 byte aligned.</p>
+ */
+public class SpinLock {
+    static final int PID = (int) ProcessHandle.current().pid();
+
+    private final Bytes bytes;
+    private final long offset;
+
+    public SpinLock(Bytes bytes, long offset) {
+        this.bytes = bytes;
+        this.offset = offset;
+    }
+
+    public boolean tryLock() {
+        return bytes.compareAndSwapInt(offset, 0, PID);
+    }
+
+    public void lock() {
+        while (!tryLock())
+            Thread.onSpinWait();
+    }
+
+    /**
+     * Lock, taking the lock over if it is still held after waiting <tt>staleNanos</tt> and its owner is no longer
+     * running.  The owner may have died part way through changing the data the lock guards, so a caller which took the
+     * lock over should check or repair that data before using it.
+     *
+     * @param staleNanos how long to wait before checking whether the owner is running, and between checks.
+     * @return true if the lock was taken over from an owner which died, false if it was unlocked.
+     */
+    public boolean lock(long staleNanos) {
+        if (tryLock())
+            return false;
+        long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            int owner = owner();
+            if (owner == 0) {
+                if (tryLock())
+                    return false;
+            } else if (System.nanoTime() - start > staleNanos) {
+                if (!isAlive(owner) && bytes.compareAndSwapInt(offset, owner, PID))
+                    return true;
+                // wait another staleNanos before checking again, as checking a process is expensive.
+                start = System.nanoTime();
+            }
+            if (spins < 1000)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * @param timeout the maximum time to spin for.
+     * @param unit    of the timeout.
+     * @return true if locked, false if the timeout elapsed first.
+     */
+    public boolean tryLock(long timeout, TimeUnit unit) {
+        if (tryLock())
+            return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        do {
+            Thread.onSpinWait();
+            if (tryLock())
+                return true;
+        } while (deadline - System.nanoTime() > 0);
+        return false;
+    }
+
+    public void unlock() {
+        assert bytes.getInt(offset) == PID : "Not locked by this process";
+        bytes.putOrderedInt(offset, 0);
+    }
+
+    /**
+     * @return the process id of the owner, or 0 if unlocked.
+     */
+    public int owner() {
+        return bytes.getVolatileInt(offset);
+    }
+
+    static boolean isAlive(int pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+}
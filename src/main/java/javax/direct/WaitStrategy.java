@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits between polls of a value in a Bytes, trading latency against the CPU used.
+ *
+ * @see Bytes#awaitLong(long, long, WaitStrategy)
+ * @see Bytes#awaitIntChange(long, int, WaitStrategy)
+ */
+public interface WaitStrategy {
+    /**
+     * Spin, hinting to the processor with {@link Thread#onSpinWait()}.  The lowest latency, but uses a whole core.
+     */
+    WaitStrategy BUSY_SPIN = iteration -> {
+        Thread.onSpinWait();
+        checkInterrupted();
+    };
+
+    /**
+     * Called each time the value polled has not yet changed.  Every strategy checks whether the thread has been
+     * interrupted, as the caller only returns once the value changes.
+     *
+     * @param iteration the number of times this has been called in this wait, starting at 0.  It stays at
+     *                  <tt>Integer.MAX_VALUE</tt> once reached rather than overflowing, and strategies must not
+     *                  overflow in arithmetic on it.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    void idle(int iteration) throws InterruptedException;
+
+    /**
+     * Spin, then yield the CPU to other threads.
+     *
+     * @param spins the number of polls to spin for before yielding.
+     * @return the wait strategy.
+     */
+    static WaitStrategy progressiveYield(int spins) {
+        return iteration -> {
+            if (iteration < spins)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+            checkInterrupted();
+        };
+    }
+
+    /**
+     * Spin, then yield, then park for twice as long each time, up to <tt>maxParkNanos</tt>.  This uses little CPU
+     * when the value changes rarely, while responding quickly when it changes often.
+     *
+     * @param spins        the number of polls to spin for.
+     * @param yields       the number of polls to yield for after spinning.
+     * @param maxParkNanos the longest time to park for.
+     * @return the wait strategy.
+     */
+    static WaitStrategy backoff(int spins, int yields, long maxParkNanos) {
+        return iteration -> {
+            // in long arithmetic, as spins + yields may exceed Integer.MAX_VALUE.
+            if (iteration < spins) {
+                Thread.onSpinWait();
+                checkInterrupted();
+            } else if (iteration < (long) spins + yields) {
+                Thread.yield();
+                checkInterrupted();
+            } else {
+                long parks = Math.min((long) iteration - spins - yields, 40);
+                parkNanos(Math.min(1000L << parks, maxParkNanos));
+            }
+        };
+    }
+
+    /**
+     * Park for <tt>parkNanos</tt> on every poll, without spinning or yielding.  A parked virtual thread releases its
+     * carrier thread, whereas a spinning one would hold it, so this suits virtual threads.
+     *
+     * @param parkNanos the time to park for.
+     * @return the wait strategy.
+     */
+    static WaitStrategy park(long parkNanos) {
+        return iteration -> parkNanos(parkNanos);
+    }
+
+    private static void parkNanos(long nanos) throws InterruptedException {
+        LockSupport.parkNanos(nanos);
+        checkInterrupted();
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A Bytes over a ByteBuffer for tests, implementing only the methods the classes under test use.  Every call is made
+ * under one lock, so the atomic and ordered methods are trivially atomic and ordered.
+ */
+final class ByteBufferBytes {
+    private ByteBufferBytes() {
+    }
+
+    static Bytes allocate(long capacity) {
+        return wrap(ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.nativeOrder()));
+    }
+
+    static Bytes wrap(ByteBuffer bb) {
+        int[] refCount = {1};
+        ClassLoader loader = Bytes.class.getClassLoader();
+        return (Bytes) Proxy.newProxyInstance(loader, new Class[]{Bytes.class}, (proxy, method, args) -> {
+            synchronized (bb) {
+                switch (method.getName()) {
+                    case "capacity":
+                        return (long) bb.capacity();
+                    case "position":
+                        if (args == null)
+                            return (long) bb.position();
+                        bb.position(index(args[0]));
+                        return proxy;
+                    case "remaining":
+                        return (long) bb.remaining();
+                    case "getInt":
+                    case "getVolatileInt":
+                        return bb.getInt(index(args[0]));
+                    case "putInt":
+                    case "putOrderedInt":
+                        bb.putInt(index(args[0]), (Integer) args[1]);
+                        return proxy;
+                    case "getLong":
+                    case "getVolatileLong":
+                        return args == null ? bb.getLong() : bb.getLong(index(args[0]));
+                    case "putLong":
+                    case "putOrderedLong":
+                        if (args.length == 1)
+                            bb.putLong((Long) args[0]);
+                        else
+                            bb.putLong(index(args[0]), (Long) args[1]);
+                        return proxy;
+                    case "compareAndSwapInt":
+                        if (bb.getInt(index(args[0])) != (Integer) args[1])
+                            return false;
+                        bb.putInt(index(args[0]), (Integer) args[2]);
+                        return true;
+                    case "compareAndSwapLong":
+                        if (bb.getLong(index(args[0])) != (Long) args[1])
+                            return false;
+                        bb.putLong(index(args[0]), (Long) args[2]);
+                        return true;
+                    case "fillByte":
+                        for (long i = 0; i < (Long) args[1]; i++)
+                            bb.put(index(args[0]) + (int) i, (Byte) args[2]);
+                        return proxy;
+                    case "force":
+                        return proxy;
+                    case "reserve":
+                        refCount[0]++;
+                        return null;
+                    case "release":
+                    case "releaseOwner":
+                        if (refCount[0] <= 0)
+                            throw new IllegalStateException("Released");
+                        refCount[0]--;
+                        return null;
+                    case "referenceCount":
+                        return refCount[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "ByteBufferBytes " + bb;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return a factory which returns <tt>bytes</tt> from every map method.
+     */
+    static BytesFactory mapping(Bytes bytes) {
+        ClassLoader loader = BytesFactory.class.getClassLoader();
+        Class[] interfaces = {BytesFactory.class};
+        return (BytesFactory) Proxy.newProxyInstance(loader, interfaces, (proxy, method, args) -> {
+            if (method.getName().equals("map"))
+                return bytes;
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private static int index(Object offset) {
+        return Math.toIntExact((Long) offset);
+    }
+}
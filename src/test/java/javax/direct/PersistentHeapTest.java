@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PersistentHeapTest {
+    private static final long FIRST = PersistentHeap.HEADER_SIZE + 8;
+
+    @Test
+    public void reopenWithoutCloseRecoversAndMerges() {
+        Bytes bytes = ByteBufferBytes.allocate(1 << 20);
+        PersistentHeap heap = new PersistentHeap(bytes);
+        // start with one large free block for the random blocks to be split from.
+        heap.free(heap.malloc((1 << 17) - 8));
+        Random random = new Random(1);
+        List<Long> live = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            if (live.isEmpty() || random.nextBoolean()) {
+                long size = random.nextInt(300);
+                long offset = heap.malloc(size);
+                assertTrue(offset > 0);
+                assertTrue(heap.sizeOf(offset) >= size);
+                live.add(offset);
+            } else {
+                heap.free(live.remove(random.nextInt(live.size())));
+            }
+        }
+        heap.root(live.get(0));
+
+        // not closed, as if the process died.
+        PersistentHeap reopened = new PersistentHeap(bytes);
+        assertEquals((long) live.get(0), reopened.root());
+        assertNoOverlaps(reopened, live);
+        for (long offset : live)
+            reopened.free(offset);
+
+        // every block has merged back into the large block, rather than being taken from the top.
+        assertEquals(FIRST, reopened.malloc((1 << 17) - 8));
+        reopened.close();
+    }
+
+    @Test
+    public void splitsLargerBlocks() {
+        PersistentHeap heap = new PersistentHeap(ByteBufferBytes.allocate(1 << 16));
+        long big = heap.malloc(1000);
+        heap.free(big);
+        long small = heap.malloc(24);
+        assertEquals(big, small);
+        assertEquals(24, heap.sizeOf(small));
+        // the other halves of the split are used before the top.
+        long next = heap.malloc(24);
+        assertEquals(small + 32, next);
+    }
+
+    @Test
+    public void alignmentGapsMergeWithTheirBuddies() {
+        PersistentHeap heap = new PersistentHeap(ByteBufferBytes.allocate(1 << 16));
+        heap.free(heap.malloc(24));
+        long aligned = heap.malloc(100);
+        long a = heap.malloc(50);
+        long b = heap.malloc(50);
+        assertEquals(FIRST, a);
+        assertEquals(FIRST + 64, b);
+        assertTrue(aligned > b);
+    }
+
+    @Test
+    public void doubleFreeIsRejected() {
+        PersistentHeap heap = new PersistentHeap(ByteBufferBytes.allocate(1 << 16));
+        long offset = heap.malloc(10);
+        long other = heap.malloc(10);
+        heap.free(offset);
+        try {
+            heap.free(offset);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        heap.free(other);
+        try {
+            // merged into its buddy, so no longer the start of a block.
+            heap.free(other);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void fullHeapReturnsMinusOne() {
+        PersistentHeap heap = new PersistentHeap(ByteBufferBytes.allocate(PersistentHeap.HEADER_SIZE + 1024));
+        assertTrue(heap.malloc(1000) > 0);
+        assertEquals(-1, heap.malloc(1));
+    }
+
+    @Test
+    public void openReleasesTheMappingWhenTooSmall() {
+        Bytes bytes = ByteBufferBytes.allocate(64);
+        try {
+            PersistentHeap.open(ByteBufferBytes.mapping(bytes), new File("heap"), 64);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, bytes.referenceCount());
+    }
+
+    private static void assertNoOverlaps(PersistentHeap heap, List<Long> live) {
+        Map<Long, Long> blocks = new TreeMap<>();
+        for (long offset : live)
+            blocks.put(offset, offset + heap.sizeOf(offset));
+        long end = 0;
+        for (Map.Entry<Long, Long> block : blocks.entrySet()) {
+            assertTrue("overlap at " + block.getKey(), block.getKey() >= end);
+            end = block.getValue();
+        }
+    }
+}
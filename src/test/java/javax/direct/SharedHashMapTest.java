@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedHashMapTest {
+    // the layout of a map with one segment, as formatted by SharedHashMap.
+    private static final long SEGMENT = 128;
+    private static final long FIRST_ENTRY = SEGMENT + 128;
+    private static final int DEAD_PID = Integer.MAX_VALUE;
+
+    private final Bytes value = ByteBufferBytes.wrap(ByteBuffer.allocate(8));
+
+    @Test
+    public void matchesAReferenceMap() {
+        // a small map so probes wrap around the end of each segment, and many removes leave tombstones.
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(2, 40, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 2, 40, 8);
+        Map<Long, Long> reference = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(60);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (reference.size() < 30 || reference.containsKey(key)) {
+                        long v = random.nextLong();
+                        map.put(key, value(v));
+                        reference.put(key, v);
+                    }
+                    break;
+                case 1:
+                    assertEquals(reference.remove(key) != null, map.remove(key));
+                    break;
+                default:
+                    Long expected = reference.get(key);
+                    assertEquals(expected != null, map.get(key, value.position(0)));
+                    if (expected != null)
+                        assertEquals((long) expected, value.getLong(0));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+    }
+
+    @Test
+    public void removingEveryKeyLeavesNoTombstones() {
+        // 16 entries, nearly full so some keys wrap around the end of the segment.
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(1, 12, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 1, 12, 8);
+        for (long key = 0; key < 15; key++)
+            map.put(key, value(key));
+        for (long key = 14; key >= 0; key -= 2)
+            assertTrue(map.remove(key));
+        for (long key = 1; key < 15; key += 2)
+            assertTrue(map.remove(key));
+        assertEquals(0, map.size());
+        for (int slot = 0; slot < 16; slot++)
+            assertEquals("state of slot " + slot, 0, bytes.getInt(entry(slot)));
+    }
+
+    @Test
+    public void recoversAStaleLockWithTwoVersionsOfAKey() {
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(1, 12, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 1, 12, 8);
+        for (long key = 0; key < 5; key++)
+            map.put(key, value(key));
+
+        // as if a process died part way through an update of key 3, holding the lock, having written the new version
+        // to the next free slot on its probe path but not yet removed the old one.
+        int slot = 0;
+        while (bytes.getInt(entry(slot)) != 1 || bytes.getLong(entry(slot) + 8) != 3)
+            slot++;
+        long old = entry(slot);
+        while (bytes.getInt(entry(slot)) == 1)
+            slot = (slot + 1) & 15;
+        long free = entry(slot);
+        bytes.putInt(free + 4, bytes.getInt(old + 4) + 1);
+        bytes.putLong(free + 8, 3);
+        bytes.putLong(free + 16, 33);
+        bytes.putInt(free, 1);
+        bytes.putInt(SEGMENT, DEAD_PID);
+
+        assertTrue(map.get(3, value.position(0)));
+        assertEquals(33, value.getLong(0));
+        assertEquals(5, map.size());
+        assertTrue(map.remove(3));
+        assertFalse(map.containsKey(3));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void bytesKeys() {
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(4, 1000, 16, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 4, 1000, 16, 8);
+        Bytes key = ByteBufferBytes.wrap(ByteBuffer.allocate(16));
+        for (long i = 0; i < 1000; i++)
+            map.put(key(key, i, -i), value(i * 7));
+        assertEquals(1000, map.size());
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(map.get(key(key, i, -i), value.position(0)));
+            assertEquals(0, key.position());
+            assertEquals(i * 7, value.getLong(0));
+        }
+        assertFalse(map.containsKey(key(key, 1, 1)));
+        try {
+            map.containsKey(1L);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void longKeysAreBytesKeysOfEightBytes() {
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(2, 100, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 2, 100, 8);
+        map.put(42, value(1));
+        Bytes key = ByteBufferBytes.wrap(ByteBuffer.allocate(8));
+        key.putLong(0, 42);
+        assertTrue(map.containsKey(key));
+    }
+
+    @Test
+    public void reopenKeepsEntries() {
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(4, 100, 8));
+        SharedHashMap map = new SharedHashMap(bytes, 4, 100, 8);
+        map.put(1, value(11));
+        map.close();
+        SharedHashMap reopened = new SharedHashMap(bytes, 4, 100, 8);
+        assertTrue(reopened.get(1, value.position(0)));
+        assertEquals(11, value.getLong(0));
+        try {
+            new SharedHashMap(bytes, 4, 100, 16);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void openReleasesTheMapping() {
+        Bytes bytes = ByteBufferBytes.allocate(SharedHashMap.sizeFor(4, 100, 8));
+        SharedHashMap map = SharedHashMap.open(ByteBufferBytes.mapping(bytes), new File("map"), 4, 100, 8);
+        map.close();
+        assertEquals(0, bytes.referenceCount());
+
+        Bytes tooSmall = ByteBufferBytes.allocate(256);
+        try {
+            SharedHashMap.open(ByteBufferBytes.mapping(tooSmall), new File("map"), 4, 100, 8);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, tooSmall.referenceCount());
+    }
+
+    private static long entry(int slot) {
+        return FIRST_ENTRY + slot * 24L;
+    }
+
+    private Bytes value(long v) {
+        value.putLong(0, v);
+        return value.position(0);
+    }
+
+    private static Bytes key(Bytes key, long first, long second) {
+        key.putLong(0, first);
+        key.putLong(8, second);
+        return key.position(0);
+    }
+}
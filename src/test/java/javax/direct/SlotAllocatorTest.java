@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Peter Lawrey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.direct;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlotAllocatorTest {
+    @Test
+    public void exhaustFreeAllAndReallocate() {
+        Bytes bytes = ByteBufferBytes.allocate(SlotAllocator.HEADER_SIZE + 100 * 24 + 20);
+        SlotAllocator allocator = SlotAllocator.format(bytes, 24);
+        assertEquals(100, allocator.slots());
+
+        Set<Long> offsets = allocateAll(allocator);
+        assertEquals(100, offsets.size());
+        for (long offset : offsets) {
+            assertTrue(offset >= SlotAllocator.HEADER_SIZE);
+            assertEquals(0, (offset - SlotAllocator.HEADER_SIZE) % 24);
+        }
+        assertEquals(-1, allocator.allocate());
+
+        for (long offset : offsets)
+            allocator.free(offset);
+        assertEquals(offsets, allocateAll(allocator));
+    }
+
+    @Test
+    public void attachSharesTheFreeList() {
+        Bytes bytes = ByteBufferBytes.allocate(SlotAllocator.HEADER_SIZE + 10 * 8);
+        SlotAllocator formatted = SlotAllocator.format(bytes, 8);
+        SlotAllocator attached = SlotAllocator.attach(bytes);
+        assertEquals(8, attached.slotSize());
+        assertEquals(10, attached.slots());
+
+        Set<Long> offsets = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            offsets.add(formatted.allocate());
+            offsets.add(attached.allocate());
+        }
+        assertEquals(10, offsets.size());
+        assertEquals(-1, attached.allocate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void attachBeforeFormat() {
+        SlotAllocator.attach(ByteBufferBytes.allocate(SlotAllocator.HEADER_SIZE + 64));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void freeNotASlot() {
+        SlotAllocator allocator = SlotAllocator.format(ByteBufferBytes.allocate(SlotAllocator.HEADER_SIZE + 64), 16);
+        allocator.free(allocator.allocate() + 8);
+    }
+
+    private static Set<Long> allocateAll(SlotAllocator allocator) {
+        Set<Long> offsets = new HashSet<>();
+        for (long offset; (offset = allocator.allocate()) >= 0; )
+            assertTrue("allocated twice " + offset, offsets.add(offset));
+        return offsets;
+    }
+}